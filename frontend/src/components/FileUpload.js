@@ -134,7 +134,7 @@ const FileUpload = ({ onFileUpload, uploadedFile, isProcessing }) => {
         <h5>File Requirements:</h5>
         <ul>
           <li>Excel files (.xlsx, .xls) or CSV files (.csv)</li>
-          <li>Maximum file size: 10 MB</li>
+          <li>Maximum file size: 1 GB</li>
           <li>Should contain columns matching the template placeholders</li>
         </ul>
       </div>
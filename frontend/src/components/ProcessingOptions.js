@@ -1,4 +1,4 @@
-import React from 'react';
+import React, { useRef } from 'react';
 import axios from 'axios';
 
 const ProcessingOptions = ({ 
@@ -11,25 +11,51 @@ const ProcessingOptions = ({
   isProcessing 
 }) => {
 
+  // Handle of the staged upload, so switching between processing types does not send the file again
+  const staged = useRef({ file: null, handle: null });
+  // Last job per processing type; passing it back lets the server reuse documents whose rows did not change
+  const previousJobs = useRef({});
+
+  const stageFile = async () => {
+    const formData = new FormData();
+    formData.append('file', uploadedFile);
+
+    const response = await axios.post('http://localhost:8080/api/staging', formData, {
+      headers: {
+        'Content-Type': 'multipart/form-data',
+      },
+    });
+    staged.current = { file: uploadedFile, handle: response.data.handle };
+    return response.data.handle;
+  };
+
   const processFile = async (type) => {
     setIsProcessing(true);
     setError(null);
     setResult(null);
 
-    const formData = new FormData();
-    formData.append('file', uploadedFile);
-
     try {
-      const endpoint = type === 'aggregated' 
-        ? 'http://localhost:8080/api/generate-aggregated-docs' 
-        : 'http://localhost:8080/api/generate-docs';
+      const action = type === 'aggregated' ? 'generate-aggregated-docs' : 'generate-docs';
+      const previousJobId = previousJobs.current[type];
+      const generate = (handle) => axios.post(
+        `http://localhost:8080/api/staging/${handle}/${action}`,
+        previousJobId ? { jobId: previousJobId } : null,
+        { responseType: 'blob' } // Important for file download
+      );
 
-      const response = await axios.post(endpoint, formData, {
-        headers: {
-          'Content-Type': 'multipart/form-data',
-        },
-        responseType: 'blob', // Important for file download
-      });
+      let handle = staged.current.file === uploadedFile ? staged.current.handle : await stageFile();
+      let response;
+      try {
+        response = await generate(handle);
+      } catch (error) {
+        // The staged upload expired on the server; stage it again once
+        if (error.response?.status !== 404 || staged.current.handle !== handle) {
+          throw error;
+        }
+        handle = await stageFile();
+        response = await generate(handle);
+      }
+      previousJobs.current[type] = response.headers['x-job-id'];
 
       // Create download link
       const url = window.URL.createObjectURL(new Blob([response.data]));
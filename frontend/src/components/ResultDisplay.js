@@ -43,7 +43,7 @@ const ResultDisplay = ({ result, error, onReset }) => {
               <li>Ensure the Spring Boot server is running on http://localhost:8080</li>
               <li>Check that your file has the correct format and column headers</li>
               <li>Make sure the Rough.docx template file exists in the project root</li>
-              <li>Verify your file size is under 10 MB</li>
+              <li>Verify your file size is under 1 GB</li>
             </ul>
           </div>
         </div>
@@ -0,0 +1,103 @@
+package com.example.filecreator;
+
+import com.example.filecreator.service.CellDecoder;
+import com.example.filecreator.service.RecordField;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Micro-benchmark for numeric cell decoding, run with the {@code bench-decode} argument. It compares the
+ * regex-based parsing the parser used to do (kept here verbatim as the baseline) with {@link CellDecoder}
+ * and prints the average cost per cell.
+ */
+@Component
+public class CellDecodingBenchmark implements CommandLineRunner {
+
+    private static final String[] DECIMAL_CELLS = {
+            "6390.9024", "45,123.28", "8658", "77.28%", "-1,234.50", "12856", "0", "9935.1168", "420.65", "+5"
+    };
+    private static final String[] INTEGER_CELLS = {"1", "2", "17", "250", "1024", "99999", "3", "48", "7", "12345"};
+    private static final double[] NUMERIC_CELLS = {6390.9024, 45123.28, 8658d, 0.7728, 1234.5, 12856d, 0d, 9935.1168};
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int CELLS_PER_ROUND = 2_000_000;
+
+    private static volatile Object sink;
+
+    @Override
+    public void run(String... args) {
+        if (args.length > 0 && "bench-decode".equals(args[0])) {
+            System.out.println("Benchmarking cell decoding (" + CELLS_PER_ROUND + " cells per round)...");
+            CellDecoder decoder = new CellDecoder();
+
+            report("CSV decimal text", measure(() -> legacyDecimalRound()), measure(() -> decimalRound(decoder)));
+            report("CSV integer text", measure(() -> legacyIntegerRound()), measure(() -> integerRound(decoder)));
+            report("XLSX numeric cell", measure(() -> legacyNumericRound()), measure(() -> numericRound(decoder)));
+        }
+    }
+
+    private static void report(String label, double beforeNanos, double afterNanos) {
+        System.out.printf("  %-18s before %7.1f ns/cell   after %7.1f ns/cell   (%.1fx)%n",
+                label, beforeNanos, afterNanos, beforeNanos / afterNanos);
+    }
+
+    private static double measure(Runnable round) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) round.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) round.run();
+        return (System.nanoTime() - start) / (double) MEASURED_ROUNDS / CELLS_PER_ROUND;
+    }
+
+    private static void legacyDecimalRound() {
+        for (int i = 0; i < CELLS_PER_ROUND; i++) sink = legacyParseBigDecimal(DECIMAL_CELLS[i % DECIMAL_CELLS.length]);
+    }
+
+    private static void decimalRound(CellDecoder decoder) {
+        for (int i = 0; i < CELLS_PER_ROUND; i++) sink = decoder.decimal(RecordField.DUTY_PAYABLE, DECIMAL_CELLS[i % DECIMAL_CELLS.length]);
+    }
+
+    private static void legacyIntegerRound() {
+        for (int i = 0; i < CELLS_PER_ROUND; i++) sink = legacyParseInteger(INTEGER_CELLS[i % INTEGER_CELLS.length]);
+    }
+
+    private static void integerRound(CellDecoder decoder) {
+        for (int i = 0; i < CELLS_PER_ROUND; i++) sink = decoder.integer(RecordField.SR_NO, INTEGER_CELLS[i % INTEGER_CELLS.length]);
+    }
+
+    private static void legacyNumericRound() {
+        for (int i = 0; i < CELLS_PER_ROUND; i++) {
+            double cell = NUMERIC_CELLS[i % NUMERIC_CELLS.length];
+            sink = legacyParseBigDecimal(BigDecimal.valueOf(cell).stripTrailingZeros().toPlainString());
+        }
+    }
+
+    private static void numericRound(CellDecoder decoder) {
+        for (int i = 0; i < CELLS_PER_ROUND; i++) {
+            sink = decoder.decimal(RecordField.DUTY_PAYABLE, NUMERIC_CELLS[i % NUMERIC_CELLS.length], false);
+        }
+    }
+
+    private static Integer legacyParseInteger(String s) {
+        if (s == null || s.isEmpty()) return null;
+        try {
+            String cleaned = s.replaceAll("[^0-9-]", "");
+            return Integer.parseInt(cleaned);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static BigDecimal legacyParseBigDecimal(String s) {
+        if (s == null || s.isEmpty()) return null;
+        try {
+            String cleaned = s.replaceAll("[,%]", "").trim();
+            if (cleaned.isEmpty()) return null;
+            return new BigDecimal(cleaned);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.filecreator.config;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes a {@link StreamingResponseBody} returned in a {@code ResponseEntity<?>}, which Spring MVC only
+ * streams asynchronously when the handler declares {@code ResponseEntity<StreamingResponseBody>}; the
+ * controller's handlers answer errors with text, so they cannot. The body is written on the request thread,
+ * straight to the response: the status and headers go out with the first buffer, nothing is collected on
+ * the heap, and request-scoped resources such as spooled uploads stay until the body is done.
+ */
+class StreamingResponseBodyConverter implements HttpMessageConverter<StreamingResponseBody> {
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return StreamingResponseBody.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return Collections.singletonList(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    @Override
+    public StreamingResponseBody read(Class<? extends StreamingResponseBody> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("A streaming response body cannot be read", inputMessage);
+    }
+
+    @Override
+    public void write(StreamingResponseBody body, MediaType contentType, HttpOutputMessage outputMessage) throws IOException {
+        if (outputMessage.getHeaders().getContentType() == null) {
+            outputMessage.getHeaders().setContentType(contentType != null && contentType.isConcrete()
+                    ? contentType : MediaType.APPLICATION_OCTET_STREAM);
+        }
+        OutputStream out = outputMessage.getBody();
+        body.writeTo(out);
+        out.flush();
+    }
+}
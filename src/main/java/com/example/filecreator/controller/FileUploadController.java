@@ -1,10 +1,26 @@
 package com.example.filecreator.controller;
 
+import com.example.filecreator.model.AggregateStore;
 import com.example.filecreator.model.AggregatedExcelRecord;
 import com.example.filecreator.model.ExcelRecord;
+import com.example.filecreator.model.ExcelRecordBatch;
+import com.example.filecreator.model.ExcelRecordView;
+import com.example.filecreator.model.GenerationManifest;
+import com.example.filecreator.model.ManifestEntry;
+import com.example.filecreator.model.StagedUpload;
+import com.example.filecreator.service.AggregateStoreService;
+import com.example.filecreator.service.BeDateRange;
 import com.example.filecreator.service.DataAggregationService;
 import com.example.filecreator.service.ExcelParserService;
+import com.example.filecreator.service.GenerationJobService;
+import com.example.filecreator.service.GroupingSpec;
+import com.example.filecreator.service.SpillingAggregation;
+import com.example.filecreator.service.StagingStoreService;
+import com.example.filecreator.service.SummaryAggregation;
+import com.example.filecreator.service.UploadSpoolService;
 import com.example.filecreator.service.WordDocumentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -12,15 +28,23 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api")
-@CrossOrigin(origins = "http://localhost:3000")
+@CrossOrigin(origins = "http://localhost:3000", exposedHeaders = FileUploadController.JOB_ID_HEADER)
 public class FileUploadController {
 
+    static final String JOB_ID_HEADER = "X-Job-Id";
+
+    private static final Logger log = LoggerFactory.getLogger(FileUploadController.class);
+
     @Autowired
     private ExcelParserService parserService;
 
@@ -30,6 +54,18 @@ public class FileUploadController {
     @Autowired
     private DataAggregationService dataAggregationService;
 
+    @Autowired
+    private UploadSpoolService uploadSpoolService;
+
+    @Autowired
+    private StagingStoreService stagingStoreService;
+
+    @Autowired
+    private GenerationJobService generationJobService;
+
+    @Autowired
+    private AggregateStoreService aggregateStoreService;
+
     @GetMapping("/health")
     public ResponseEntity<String> healthCheck() {
         return ResponseEntity.ok("Server is running successfully!");
@@ -41,7 +77,8 @@ public class FileUploadController {
             return ResponseEntity.badRequest().body("Please provide a non-empty file as 'file' multipart part.");
         }
         try {
-            List<ExcelRecord> records = parserService.parse(file);
+            Path spooled = uploadSpoolService.spool(file);
+            List<ExcelRecord> records = parserService.parse(spooled.toFile());
             return ResponseEntity.ok(records);
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to parse file: " + e.getMessage());
@@ -49,57 +86,395 @@ public class FileUploadController {
     }
 
     @PostMapping(value = "/generate-docs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<?> generateDocuments(@RequestPart("file") MultipartFile file) {
+    public ResponseEntity<?> generateDocuments(@RequestPart("file") MultipartFile file,
+                                               @RequestPart(value = "manifest", required = false) MultipartFile manifest,
+                                               @RequestParam(value = "beDateFrom", required = false) String beDateFrom,
+                                               @RequestParam(value = "beDateTo", required = false) String beDateTo) {
         if (file == null || file.isEmpty()) {
             return ResponseEntity.badRequest().body("Please provide a non-empty file as 'file' multipart part.");
         }
+        BeDateRange range;
+        try {
+            range = BeDateRange.parse(beDateFrom, beDateTo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
         try {
-            // Parse the uploaded file
-            List<ExcelRecord> records = parserService.parse(file);
-            
-            // Generate Word documents
-            byte[] zipBytes = wordDocumentService.generateWordDocuments(records);
-            
-            // Return as downloadable ZIP file
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "generated_documents.zip");
-            
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(zipBytes);
-                    
+            // Spool the upload to disk; the response body parses it and streams a Word document for each
+            // record as soon as it is parsed, reusing unchanged documents from the previous job's archive
+            Path spooled = uploadSpoolService.spool(file);
+            GenerationJobService.Job job = generationJobService.start(GenerationJobService.DOCUMENTS,
+                    generationJobService.readManifest(manifest));
+            return jobDownload(job, "generated_documents.zip", out -> {
+                try (WordDocumentService.DocumentArchive archive = wordDocumentService.openDocumentArchive(out, job)) {
+                    parserService.parse(spooled.toFile(), range != null ? range.filter(archive) : archive);
+                    return archive.entries();
+                }
+            });
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to generate documents: " + e.getMessage());
         }
     }
 
     @PostMapping(value = "/generate-aggregated-docs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<?> generateAggregatedDocuments(@RequestPart("file") MultipartFile file) {
+    public ResponseEntity<?> generateAggregatedDocuments(@RequestPart("file") MultipartFile file,
+                                                         @RequestPart(value = "manifest", required = false) MultipartFile manifest,
+                                                         @RequestParam(value = "groupBy", required = false) List<String> groupBy,
+                                                         @RequestParam(value = "beDateFrom", required = false) String beDateFrom,
+                                                         @RequestParam(value = "beDateTo", required = false) String beDateTo) {
         if (file == null || file.isEmpty()) {
             return ResponseEntity.badRequest().body("Please provide a non-empty file as 'file' multipart part.");
         }
+        List<GroupingSpec> groupings;
+        BeDateRange range;
         try {
-            // Parse the uploaded file
-            List<ExcelRecord> records = parserService.parse(file);
-            
-            // Aggregate records by importer name
-            List<AggregatedExcelRecord> aggregatedRecords = dataAggregationService.aggregateByImporter(records);
-            
-            // Generate Word documents with aggregated data
-            byte[] zipBytes = wordDocumentService.generateAggregatedWordDocuments(aggregatedRecords);
-            
-            // Return as downloadable ZIP file
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "aggregated_documents.zip");
-            
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(zipBytes);
-                    
+            groupings = parseGroupings(groupBy);
+            range = BeDateRange.parse(beDateFrom, beDateTo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        try {
+            GenerationJobService.Job job = generationJobService.start(GenerationJobService.AGGREGATED,
+                    generationJobService.readManifest(manifest));
+            try {
+                // Spool the upload to disk and aggregate records by importer name (or the requested groupings)
+                // while it is parsed; large CSVs are aggregated per chunk on the parser's workers and the partial
+                // aggregations merged in order, spilling to disk if the groups outgrow the memory budget
+                Path spooled = uploadSpoolService.spool(file);
+                SpillingAggregation aggregation = parserService.parse(spooled.toFile(),
+                        () -> dataAggregationService.newSpillingAggregation(groupings, range), SpillingAggregation::merge);
+                // Stream Word documents with aggregated data as the groups come, reusing unchanged groups
+                // from the previous job
+                return jobDownload(job, "aggregated_documents.zip", out -> {
+                    try (SpillingAggregation groups = aggregation;
+                         WordDocumentService.AggregatedArchive archive = wordDocumentService.openAggregatedArchive(out, job)) {
+                        groups.forEachResult(archive::add);
+                        return archive.entries();
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                job.close();
+                throw e;
+            }
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to generate aggregated documents: " + e.getMessage());
         }
     }
+
+    @PostMapping(value = "/summary", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> summarize(@RequestPart("file") MultipartFile file,
+                                       @RequestParam(value = "top", defaultValue = "50") int top,
+                                       @RequestParam(value = "rankBy", defaultValue = "differential-duty") String rankBy,
+                                       @RequestParam(value = "beDateFrom", required = false) String beDateFrom,
+                                       @RequestParam(value = "beDateTo", required = false) String beDateTo) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body("Please provide a non-empty file as 'file' multipart part.");
+        }
+        if (top < 0) {
+            return ResponseEntity.badRequest().body("top must not be negative.");
+        }
+        ExcelRecordView.Amount ranking;
+        BeDateRange range;
+        try {
+            ranking = SummaryAggregation.rankingAmount(rankBy);
+            range = BeDateRange.parse(beDateFrom, beDateTo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        try {
+            // Totals, top importers and distinct-count estimates only, aggregated while parsing (per chunk on
+            // the parser's workers for large CSVs); no documents are rendered
+            Path spooled = uploadSpoolService.spool(file);
+            SummaryAggregation summary = parserService.parse(spooled.toFile(),
+                    () -> dataAggregationService.newSummary(range), SummaryAggregation::merge);
+            return ResponseEntity.ok(summary.result(top, ranking));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to summarize file: " + e.getMessage());
+        }
+    }
+
+    // Upload once, then preview and generate against the returned handle without sending the file again
+
+    @PostMapping(value = "/staging", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> stageFile(@RequestPart("file") MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body("Please provide a non-empty file as 'file' multipart part.");
+        }
+        try {
+            return ResponseEntity.ok(stagingStoreService.stage(file));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to parse file: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/staging/{handle}")
+    public ResponseEntity<?> getStagedFile(@PathVariable String handle) {
+        StagedUpload staged = stagingStoreService.describe(handle);
+        if (staged == null) {
+            return unknownHandle(handle);
+        }
+        return ResponseEntity.ok(staged);
+    }
+
+    @GetMapping("/staging/{handle}/records")
+    public ResponseEntity<?> previewStagedRecords(@PathVariable String handle,
+                                                  @RequestParam(defaultValue = "0") int offset,
+                                                  @RequestParam(defaultValue = "100") int limit) {
+        if (offset < 0 || limit < 0) {
+            return ResponseEntity.badRequest().body("offset and limit must not be negative.");
+        }
+        try {
+            ExcelRecordBatch batch = stagingStoreService.records(handle);
+            if (batch == null) {
+                return unknownHandle(handle);
+            }
+            int end = (int) Math.min(batch.size(), (long) offset + limit);
+            List<ExcelRecord> records = new ArrayList<>(Math.max(end - offset, 0));
+            for (int row = offset; row < end; row++) {
+                records.add(batch.toRecord(row));
+            }
+            return ResponseEntity.ok(records);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to parse file: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/staging/{handle}/generate-docs")
+    public ResponseEntity<?> generateStagedDocuments(@PathVariable String handle,
+                                                     @RequestBody(required = false) GenerationManifest manifest,
+                                                     @RequestParam(value = "beDateFrom", required = false) String beDateFrom,
+                                                     @RequestParam(value = "beDateTo", required = false) String beDateTo) {
+        BeDateRange range;
+        try {
+            range = BeDateRange.parse(beDateFrom, beDateTo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        try {
+            ExcelRecordBatch batch = stagingStoreService.records(handle);
+            if (batch == null) {
+                return unknownHandle(handle);
+            }
+            GenerationJobService.Job job = generationJobService.start(GenerationJobService.DOCUMENTS, manifest);
+            return jobDownload(job, "generated_documents.zip", out -> {
+                try (WordDocumentService.DocumentArchive archive = wordDocumentService.openDocumentArchive(out, job)) {
+                    for (ExcelRecordView record : range != null ? range.select(batch) : batch.rows()) {
+                        archive.add(record);
+                    }
+                    return archive.entries();
+                }
+            });
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to generate documents: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/staging/{handle}/generate-aggregated-docs")
+    public ResponseEntity<?> generateStagedAggregatedDocuments(@PathVariable String handle,
+                                                               @RequestBody(required = false) GenerationManifest manifest,
+                                                               @RequestParam(value = "groupBy", required = false) List<String> groupBy,
+                                                               @RequestParam(value = "beDateFrom", required = false) String beDateFrom,
+                                                               @RequestParam(value = "beDateTo", required = false) String beDateTo) {
+        List<GroupingSpec> groupings;
+        BeDateRange range;
+        try {
+            groupings = parseGroupings(groupBy);
+            range = BeDateRange.parse(beDateFrom, beDateTo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        try {
+            ExcelRecordBatch batch = stagingStoreService.records(handle);
+            if (batch == null) {
+                return unknownHandle(handle);
+            }
+            // the BE Date range is applied to the batch's epoch-day column before aggregating
+            List<ExcelRecordView> rows = range != null ? range.select(batch) : batch.rows();
+            List<AggregatedExcelRecord> aggregatedRecords = groupings == null
+                    ? dataAggregationService.aggregateByImporter(rows)
+                    : dataAggregationService.aggregate(rows, groupings);
+            GenerationJobService.Job job = generationJobService.start(GenerationJobService.AGGREGATED, manifest);
+            return jobDownload(job, "aggregated_documents.zip",
+                    out -> wordDocumentService.writeAggregatedWordDocuments(aggregatedRecords, out, job));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to generate aggregated documents: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/staging/{handle}/summary")
+    public ResponseEntity<?> summarizeStagedFile(@PathVariable String handle,
+                                                 @RequestParam(value = "top", defaultValue = "50") int top,
+                                                 @RequestParam(value = "rankBy", defaultValue = "differential-duty") String rankBy,
+                                                 @RequestParam(value = "beDateFrom", required = false) String beDateFrom,
+                                                 @RequestParam(value = "beDateTo", required = false) String beDateTo) {
+        if (top < 0) {
+            return ResponseEntity.badRequest().body("top must not be negative.");
+        }
+        ExcelRecordView.Amount ranking;
+        BeDateRange range;
+        try {
+            ranking = SummaryAggregation.rankingAmount(rankBy);
+            range = BeDateRange.parse(beDateFrom, beDateTo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        try {
+            ExcelRecordBatch batch = stagingStoreService.records(handle);
+            if (batch == null) {
+                return unknownHandle(handle);
+            }
+            SummaryAggregation summary = dataAggregationService.newSummary(null);
+            for (ExcelRecordView record : range != null ? range.select(batch) : batch.rows()) {
+                summary.add(record);
+            }
+            return ResponseEntity.ok(summary.result(top, ranking));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to summarize file: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/staging/{handle}")
+    public ResponseEntity<?> discardStagedFile(@PathVariable String handle) {
+        if (!stagingStoreService.discard(handle)) {
+            return unknownHandle(handle);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    // Named stores that aggregate upload after upload (e.g. month by month) for year-to-date documents
+
+    @PostMapping(value = "/stores/{store}/uploads", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> addStoreUpload(@PathVariable String store, @RequestPart("file") MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body("Please provide a non-empty file as 'file' multipart part.");
+        }
+        try {
+            // Rows already in the store (same BE Number and item) are skipped, so re-sending a month is harmless
+            Path spooled = uploadSpoolService.spool(file);
+            return ResponseEntity.ok(aggregateStoreService.ingest(store, spooled.toFile(), file.getOriginalFilename()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to add file to store: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/stores/{store}")
+    public ResponseEntity<?> getStore(@PathVariable String store) {
+        try {
+            AggregateStore described = aggregateStoreService.describe(store);
+            if (described == null) {
+                return unknownStore(store);
+            }
+            return ResponseEntity.ok(described);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to read store: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/stores/{store}/generate-aggregated-docs")
+    public ResponseEntity<?> generateStoreAggregatedDocuments(@PathVariable String store,
+                                                              @RequestBody(required = false) GenerationManifest manifest) {
+        try {
+            List<AggregatedExcelRecord> aggregatedRecords = aggregateStoreService.aggregated(store);
+            if (aggregatedRecords == null) {
+                return unknownStore(store);
+            }
+            GenerationJobService.Job job = generationJobService.start(GenerationJobService.AGGREGATED, manifest);
+            return jobDownload(job, "aggregated_documents.zip",
+                    out -> wordDocumentService.writeAggregatedWordDocuments(aggregatedRecords, out, job));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to generate aggregated documents: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/stores/{store}")
+    public ResponseEntity<?> discardStore(@PathVariable String store) {
+        try {
+            if (!aggregateStoreService.discard(store)) {
+                return unknownStore(store);
+            }
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to delete store: " + e.getMessage());
+        }
+    }
+
+    // Previous generation jobs, whose manifests can be passed back to regenerate only what changed
+
+    @GetMapping("/jobs/{jobId}/manifest")
+    public ResponseEntity<?> getJobManifest(@PathVariable String jobId) {
+        try {
+            GenerationManifest manifest = generationJobService.manifest(jobId);
+            if (manifest == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown or expired job: " + jobId);
+            }
+            return ResponseEntity.ok(manifest);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to read manifest: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the job's archive to the client as {@code generation} writes it (see
+     * {@link com.example.filecreator.config.StreamingResponseBodyConverter}), so the download starts with the
+     * first document and the ZIP is never held in memory; the job keeps a copy on disk and is completed with
+     * the entries the generation returns. Everything that can be answered with an error status has to be
+     * checked before: once the body runs, the status is sent and a failure can only break off the download
+     * (the job is then discarded).
+     */
+    private static ResponseEntity<StreamingResponseBody> jobDownload(GenerationJobService.Job job, String filename,
+                                                                     ArchiveGeneration generation) {
+        // Return the job's archive as downloadable ZIP file; the job id lets the client fetch its manifest
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentDispositionFormData("attachment", filename);
+        headers.set(JOB_ID_HEADER, job.id());
+
+        StreamingResponseBody body = out -> {
+            try (GenerationJobService.Job running = job) {
+                running.complete(generation.writeTo(running.openArchive(out)));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Generation job {} failed while streaming {}: {}", job.id(), filename, e.toString());
+                throw e;
+            }
+        };
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(body);
+    }
+
+    /** Writes a job's ZIP to {@code archive}, closing it, and returns its entries in ZIP order. */
+    private interface ArchiveGeneration {
+        List<ManifestEntry> writeTo(OutputStream archive) throws IOException;
+    }
+
+    // groupBy=importer>hs2&groupBy=cha (or groupBy=importer>hs2,cha); null when no grouping was requested
+    private static List<GroupingSpec> parseGroupings(List<String> groupBy) {
+        if (groupBy == null || groupBy.isEmpty()) {
+            return null;
+        }
+        List<GroupingSpec> groupings = new ArrayList<>(groupBy.size());
+        for (String specs : groupBy) {
+            for (String spec : specs.split(",")) {
+                groupings.add(GroupingSpec.parse(spec));
+            }
+        }
+        return groupings;
+    }
+
+    private static ResponseEntity<?> unknownHandle(String handle) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body("Unknown or expired upload handle: " + handle + ". Please upload the file again.");
+    }
+
+    private static ResponseEntity<?> unknownStore(String store) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown store: " + store);
+    }
 }
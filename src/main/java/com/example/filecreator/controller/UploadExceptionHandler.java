@@ -0,0 +1,25 @@
+package com.example.filecreator.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+/**
+ * Multipart limits are enforced while the request is resolved, before any controller method runs, so the
+ * "too large" answer has to come from an advice rather than from {@link FileUploadController} itself.
+ */
+@RestControllerAdvice
+public class UploadExceptionHandler {
+
+    @Value("${spring.servlet.multipart.max-file-size:1GB}")
+    private String maxFileSize;
+
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<String> uploadTooLarge(MaxUploadSizeExceededException e) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body("File exceeds the maximum upload size of " + maxFileSize + ".");
+    }
+}
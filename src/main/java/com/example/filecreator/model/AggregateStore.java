@@ -0,0 +1,72 @@
+package com.example.filecreator.model;
+
+import java.time.Instant;
+
+public class AggregateStore {
+    private String name;
+    private int uploads; // Uploads merged into the store so far
+    private long records; // Rows aggregated, duplicates not included
+    private long duplicatesSkipped; // Rows skipped because their BE Number and item were already in the store
+    private int importers;
+    private Instant updatedAt; // Time of the last upload
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getUploads() {
+        return uploads;
+    }
+
+    public void setUploads(int uploads) {
+        this.uploads = uploads;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public void setRecords(long records) {
+        this.records = records;
+    }
+
+    public long getDuplicatesSkipped() {
+        return duplicatesSkipped;
+    }
+
+    public void setDuplicatesSkipped(long duplicatesSkipped) {
+        this.duplicatesSkipped = duplicatesSkipped;
+    }
+
+    public int getImporters() {
+        return importers;
+    }
+
+    public void setImporters(int importers) {
+        this.importers = importers;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "AggregateStore{" +
+                "name='" + name + '\'' +
+                ", uploads=" + uploads +
+                ", records=" + records +
+                ", duplicatesSkipped=" + duplicatesSkipped +
+                ", importers=" + importers +
+                ", updatedAt=" + updatedAt +
+                '}';
+    }
+}
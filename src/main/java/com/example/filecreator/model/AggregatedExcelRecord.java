@@ -3,7 +3,10 @@ package com.example.filecreator.model;
 import java.math.BigDecimal;
 
 public class AggregatedExcelRecord {
-    private String importerName;
+    private String grouping; // Grouping spec this record belongs to, e.g. "importer>hs2"; null for the plain importer aggregation
+    private String groupKey; // Key of the group within its grouping, e.g. "ABC > 85"
+    private String importerName; // Comma-separated importer names (one for an importer group)
+    private String aggregatedIecCodes; // Comma-separated unique IEC codes
     private String address; // First address found for this importer
     private String aggregatedHsCodes; // Comma-separated unique HS codes
     private String aggregatedBeNumbers; // Comma-separated BE numbers
@@ -20,6 +23,22 @@ public class AggregatedExcelRecord {
     private String aggregatedChaDetails; // Comma-separated CHA details
 
     // Getters and Setters
+    public String getGrouping() {
+        return grouping;
+    }
+
+    public void setGrouping(String grouping) {
+        this.grouping = grouping;
+    }
+
+    public String getGroupKey() {
+        return groupKey;
+    }
+
+    public void setGroupKey(String groupKey) {
+        this.groupKey = groupKey;
+    }
+
     public String getImporterName() {
         return importerName;
     }
@@ -28,6 +47,14 @@ public class AggregatedExcelRecord {
         this.importerName = importerName;
     }
 
+    public String getAggregatedIecCodes() {
+        return aggregatedIecCodes;
+    }
+
+    public void setAggregatedIecCodes(String aggregatedIecCodes) {
+        this.aggregatedIecCodes = aggregatedIecCodes;
+    }
+
     public String getAddress() {
         return address;
     }
@@ -143,7 +170,9 @@ public class AggregatedExcelRecord {
     @Override
     public String toString() {
         return "AggregatedExcelRecord{" +
-                "importerName='" + importerName + '\'' +
+                "grouping='" + grouping + '\'' +
+                ", groupKey='" + groupKey + '\'' +
+                ", importerName='" + importerName + '\'' +
                 ", address='" + address + '\'' +
                 ", aggregatedHsCodes='" + aggregatedHsCodes + '\'' +
                 ", totalDifferentialDuty=" + totalDifferentialDuty +
@@ -0,0 +1,133 @@
+package com.example.filecreator.model;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * BE Date values as epoch days ({@link LocalDate#toEpochDay()}), parsed once when a record's BE Date is set
+ * so filters and date buckets compare ints instead of re-parsing strings. Recognised forms are what the
+ * parser produces for the column: Excel date serials from numeric cells ({@code 44350}, 1900 date system)
+ * and day-first text from CSV ({@code 03-06-2021 00:00}, {@code 03/06/2021}), plus ISO {@code 2021-06-03};
+ * a time of day after the date is ignored. Anything else has no epoch day ({@link #NONE}).
+ */
+public final class BeDate {
+
+    /** Epoch day of a BE Date that is blank or not a recognised date. */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    // Excel serial 0 is 1900-01-00, i.e. 1899-12-31; serial 60 is Excel's 29th of February 1900, which POI
+    // (and this class) turns into the 1st of March like serial 61
+    private static final int SERIAL_ZERO = (int) LocalDate.of(1899, 12, 31).toEpochDay();
+    private static final int MAX_SERIAL = 2958465; // 9999-12-31, the last date Excel has
+
+    private static final DateTimeFormatter DISPLAY = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private BeDate() {
+    }
+
+    /** The epoch day of a raw BE Date, or {@link #NONE}. */
+    public static int epochDay(String raw) {
+        if (raw == null) {
+            return NONE;
+        }
+        String value = raw.trim();
+        int serialEnd = digits(value, 0);
+        if (serialEnd > 0 && (serialEnd == value.length()
+                || value.charAt(serialEnd) == '.' && digits(value, serialEnd + 1) == value.length())) {
+            return fromSerial(value, serialEnd);
+        }
+        return fromText(value);
+    }
+
+    /**
+     * How a raw BE Date is shown in aggregated documents: Excel serials as {@code dd-MM-yyyy}, everything
+     * else as it was written.
+     */
+    public static String display(String raw) {
+        if (raw.isEmpty() || digits(raw, 0) != raw.length()) {
+            return raw;
+        }
+        int day = epochDay(raw);
+        return day != NONE ? format(day) : raw;
+    }
+
+    /** {@code dd-MM-yyyy}. */
+    public static String format(int epochDay) {
+        return DISPLAY.format(LocalDate.ofEpochDay(epochDay));
+    }
+
+    /** Calendar month of an epoch day, as {@code 2021-06}. */
+    public static String month(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        int month = date.getMonthValue();
+        return date.getYear() + (month < 10 ? "-0" : "-") + month;
+    }
+
+    /** Calendar quarter of an epoch day, as {@code 2021-Q2}. */
+    public static String quarter(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() + "-Q" + ((date.getMonthValue() + 2) / 3);
+    }
+
+    private static int fromSerial(String value, int end) {
+        // more than nine digits is past 9999 anyway, even with leading zeros
+        if (end > 9) {
+            return NONE;
+        }
+        int serial = Integer.parseInt(value, 0, end, 10);
+        if (serial > MAX_SERIAL) {
+            return NONE;
+        }
+        return SERIAL_ZERO + serial - (serial > 60 ? 1 : 0);
+    }
+
+    // d-m-yyyy or yyyy-m-d, separated by '-', '/' or '.', optionally followed by a space or 'T' and a time
+    private static int fromText(String value) {
+        int firstEnd = digits(value, 0);
+        if (firstEnd == 0 || firstEnd > 4 || firstEnd == value.length()) {
+            return NONE;
+        }
+        char separator = value.charAt(firstEnd);
+        if (separator != '-' && separator != '/' && separator != '.') {
+            return NONE;
+        }
+        int secondEnd = digits(value, firstEnd + 1);
+        if (secondEnd == firstEnd + 1 || secondEnd - firstEnd > 3
+                || secondEnd == value.length() || value.charAt(secondEnd) != separator) {
+            return NONE;
+        }
+        int thirdEnd = digits(value, secondEnd + 1);
+        if (thirdEnd == secondEnd + 1 || thirdEnd - secondEnd > 5) {
+            return NONE;
+        }
+        if (thirdEnd < value.length() && value.charAt(thirdEnd) != ' ' && value.charAt(thirdEnd) != 'T') {
+            return NONE;
+        }
+        int first = Integer.parseInt(value, 0, firstEnd, 10);
+        int second = Integer.parseInt(value, firstEnd + 1, secondEnd, 10);
+        int third = Integer.parseInt(value, secondEnd + 1, thirdEnd, 10);
+        if (firstEnd == 4) {
+            return thirdEnd - secondEnd <= 3 ? toEpochDay(first, second, third) : NONE;
+        }
+        return thirdEnd - secondEnd == 5 && firstEnd <= 2 ? toEpochDay(third, second, first) : NONE;
+    }
+
+    private static int toEpochDay(int year, int month, int day) {
+        if (year < 1 || month < 1 || month > 12 || day < 1
+                || day > Month.of(month).length(Year.isLeap(year))) {
+            return NONE;
+        }
+        return (int) LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    // end of the run of ASCII digits starting at from
+    private static int digits(String value, int from) {
+        int i = from;
+        while (i < value.length() && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+}
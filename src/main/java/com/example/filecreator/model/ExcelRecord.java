@@ -1,11 +1,14 @@
 package com.example.filecreator.model;
 
 import java.math.BigDecimal;
+import java.util.Objects;
 
-public class ExcelRecord {
+public class ExcelRecord implements ExcelRecordView {
     private Integer srNo;
     private String beNumber;
     private String beDate;
+    private int beEpochDay = BeDate.NONE; // beDate parsed once, see BeDate
+    private String iecCode;
     private String importerName;
     private String address;
     private String eightDigitHsCode;
@@ -40,9 +43,25 @@ public class ExcelRecord {
     }
 
     public void setBeDate(String beDate) {
+        // re-setting the same value, e.g. an interned copy, keeps the parsed day
+        if (!Objects.equals(beDate, this.beDate)) {
+            this.beEpochDay = BeDate.epochDay(beDate);
+        }
         this.beDate = beDate;
     }
 
+    public int beEpochDay() {
+        return beEpochDay;
+    }
+
+    public String getIecCode() {
+        return iecCode;
+    }
+
+    public void setIecCode(String iecCode) {
+        this.iecCode = iecCode;
+    }
+
     public String getImporterName() {
         return importerName;
     }
@@ -145,6 +164,7 @@ public class ExcelRecord {
                 "srNo=" + srNo +
                 ", beNumber='" + beNumber + '\'' +
                 ", beDate='" + beDate + '\'' +
+                ", iecCode='" + iecCode + '\'' +
                 ", importerName='" + importerName + '\'' +
                 ", address='" + address + '\'' +
                 ", eightDigitHsCode='" + eightDigitHsCode + '\'' +
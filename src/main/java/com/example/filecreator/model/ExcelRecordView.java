@@ -0,0 +1,76 @@
+package com.example.filecreator.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only access to one parsed row. Implemented by {@link ExcelRecord} and by the row views of
+ * {@link ExcelRecordBatch}, so aggregation and placeholder resolution work on either without copying.
+ */
+public interface ExcelRecordView {
+
+    /** The money columns. */
+    enum Amount {
+        ASSESSABLE_VALUE, TOTAL_DUTY_PAID, DUTY_PAYABLE, DIFFERENTIAL_DUTY
+    }
+
+    Integer getSrNo();
+
+    String getBeNumber();
+
+    String getBeDate();
+
+    /**
+     * The BE Date as parsed at ingest, an epoch day, or {@link BeDate#NONE}. Not a bean property, so it is not
+     * serialized with the record.
+     */
+    int beEpochDay();
+
+    String getIecCode();
+
+    String getImporterName();
+
+    String getAddress();
+
+    String getEightDigitHsCode();
+
+    String getFullItemDescription();
+
+    BigDecimal getAssessableValueAmount();
+
+    String getBcdRate();
+
+    String getIgstRate();
+
+    BigDecimal getTotalDutyPaidAmount();
+
+    String getEffectiveRateOfDuty();
+
+    BigDecimal getDutyPayable();
+
+    BigDecimal getDifferentialDuty();
+
+    String getChaDetails();
+
+    /**
+     * Adds one of the money columns to {@code sum}, skipping null. Row views of an {@link ExcelRecordBatch}
+     * add the stored unscaled value directly, without creating a {@link BigDecimal}.
+     */
+    default void addAmount(Amount amount, MoneySum sum) {
+        switch (amount) {
+            case ASSESSABLE_VALUE:
+                sum.add(getAssessableValueAmount());
+                break;
+            case TOTAL_DUTY_PAID:
+                sum.add(getTotalDutyPaidAmount());
+                break;
+            case DUTY_PAYABLE:
+                sum.add(getDutyPayable());
+                break;
+            case DIFFERENTIAL_DUTY:
+                sum.add(getDifferentialDuty());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown amount " + amount);
+        }
+    }
+}
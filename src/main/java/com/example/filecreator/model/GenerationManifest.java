@@ -0,0 +1,64 @@
+package com.example.filecreator.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GenerationManifest {
+    private String jobId;
+    private String type; // "documents" or "aggregated"
+    private String templateFingerprint; // Hash of the template the documents were rendered with
+    private Instant createdAt;
+    private List<ManifestEntry> entries = new ArrayList<>();
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getTemplateFingerprint() {
+        return templateFingerprint;
+    }
+
+    public void setTemplateFingerprint(String templateFingerprint) {
+        this.templateFingerprint = templateFingerprint;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public List<ManifestEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<ManifestEntry> entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public String toString() {
+        return "GenerationManifest{" +
+                "jobId='" + jobId + '\'' +
+                ", type='" + type + '\'' +
+                ", templateFingerprint='" + templateFingerprint + '\'' +
+                ", createdAt=" + createdAt +
+                ", entries=" + entries.size() +
+                '}';
+    }
+}
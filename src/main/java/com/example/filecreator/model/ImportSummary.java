@@ -0,0 +1,109 @@
+package com.example.filecreator.model;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public class ImportSummary {
+    private long records; // Rows summarized (within the BE Date range, if one was given)
+    private int importers; // Exact number of distinct importer names
+    private long distinctHsCodes; // Estimated, within about 1%
+    private long distinctBeNumbers; // Estimated, within about 1%
+    private BigDecimal totalDifferentialDuty;
+    private BigDecimal totalAssessableValue;
+    private BigDecimal totalDutyPaid;
+    private BigDecimal totalDutyPayable;
+    private String rankedBy; // Amount the top importers are ranked by, e.g. "differential-duty"
+    private List<ImporterSummary> topImporters; // Highest first; ties in order of first appearance
+
+    public long getRecords() {
+        return records;
+    }
+
+    public void setRecords(long records) {
+        this.records = records;
+    }
+
+    public int getImporters() {
+        return importers;
+    }
+
+    public void setImporters(int importers) {
+        this.importers = importers;
+    }
+
+    public long getDistinctHsCodes() {
+        return distinctHsCodes;
+    }
+
+    public void setDistinctHsCodes(long distinctHsCodes) {
+        this.distinctHsCodes = distinctHsCodes;
+    }
+
+    public long getDistinctBeNumbers() {
+        return distinctBeNumbers;
+    }
+
+    public void setDistinctBeNumbers(long distinctBeNumbers) {
+        this.distinctBeNumbers = distinctBeNumbers;
+    }
+
+    public BigDecimal getTotalDifferentialDuty() {
+        return totalDifferentialDuty;
+    }
+
+    public void setTotalDifferentialDuty(BigDecimal totalDifferentialDuty) {
+        this.totalDifferentialDuty = totalDifferentialDuty;
+    }
+
+    public BigDecimal getTotalAssessableValue() {
+        return totalAssessableValue;
+    }
+
+    public void setTotalAssessableValue(BigDecimal totalAssessableValue) {
+        this.totalAssessableValue = totalAssessableValue;
+    }
+
+    public BigDecimal getTotalDutyPaid() {
+        return totalDutyPaid;
+    }
+
+    public void setTotalDutyPaid(BigDecimal totalDutyPaid) {
+        this.totalDutyPaid = totalDutyPaid;
+    }
+
+    public BigDecimal getTotalDutyPayable() {
+        return totalDutyPayable;
+    }
+
+    public void setTotalDutyPayable(BigDecimal totalDutyPayable) {
+        this.totalDutyPayable = totalDutyPayable;
+    }
+
+    public String getRankedBy() {
+        return rankedBy;
+    }
+
+    public void setRankedBy(String rankedBy) {
+        this.rankedBy = rankedBy;
+    }
+
+    public List<ImporterSummary> getTopImporters() {
+        return topImporters;
+    }
+
+    public void setTopImporters(List<ImporterSummary> topImporters) {
+        this.topImporters = topImporters;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportSummary{" +
+                "records=" + records +
+                ", importers=" + importers +
+                ", distinctHsCodes=" + distinctHsCodes +
+                ", distinctBeNumbers=" + distinctBeNumbers +
+                ", totalDifferentialDuty=" + totalDifferentialDuty +
+                ", topImporters=" + topImporters +
+                '}';
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.filecreator.model;
+
+import java.math.BigDecimal;
+
+public class ImporterSummary {
+    private String importerName;
+    private long records; // Rows of this importer
+    private BigDecimal totalDifferentialDuty;
+    private BigDecimal totalAssessableValue;
+    private BigDecimal totalDutyPaid;
+    private BigDecimal totalDutyPayable;
+
+    public String getImporterName() {
+        return importerName;
+    }
+
+    public void setImporterName(String importerName) {
+        this.importerName = importerName;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public void setRecords(long records) {
+        this.records = records;
+    }
+
+    public BigDecimal getTotalDifferentialDuty() {
+        return totalDifferentialDuty;
+    }
+
+    public void setTotalDifferentialDuty(BigDecimal totalDifferentialDuty) {
+        this.totalDifferentialDuty = totalDifferentialDuty;
+    }
+
+    public BigDecimal getTotalAssessableValue() {
+        return totalAssessableValue;
+    }
+
+    public void setTotalAssessableValue(BigDecimal totalAssessableValue) {
+        this.totalAssessableValue = totalAssessableValue;
+    }
+
+    public BigDecimal getTotalDutyPaid() {
+        return totalDutyPaid;
+    }
+
+    public void setTotalDutyPaid(BigDecimal totalDutyPaid) {
+        this.totalDutyPaid = totalDutyPaid;
+    }
+
+    public BigDecimal getTotalDutyPayable() {
+        return totalDutyPayable;
+    }
+
+    public void setTotalDutyPayable(BigDecimal totalDutyPayable) {
+        this.totalDutyPayable = totalDutyPayable;
+    }
+
+    @Override
+    public String toString() {
+        return "ImporterSummary{" +
+                "importerName='" + importerName + '\'' +
+                ", records=" + records +
+                ", totalDifferentialDuty=" + totalDifferentialDuty +
+                ", totalAssessableValue=" + totalAssessableValue +
+                '}';
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.filecreator.model;
+
+public class ManifestEntry {
+    private String name; // ZIP entry name, e.g. Document_3_ABC.docx
+    private String fingerprint; // Hash of everything the document was rendered from
+    private boolean reused; // Copied from the previous job's archive instead of rendered
+
+    public ManifestEntry() {
+    }
+
+    public ManifestEntry(String name, String fingerprint, boolean reused) {
+        this.name = name;
+        this.fingerprint = fingerprint;
+        this.reused = reused;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public boolean isReused() {
+        return reused;
+    }
+
+    public void setReused(boolean reused) {
+        this.reused = reused;
+    }
+
+    @Override
+    public String toString() {
+        return "ManifestEntry{" +
+                "name='" + name + '\'' +
+                ", fingerprint='" + fingerprint + '\'' +
+                ", reused=" + reused +
+                '}';
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.filecreator.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Exact running total of money amounts, kept as a fixed-point {@code long} count of
+ * 10<sup>-{@value #SCALE}</sup> units, so adding an amount of up to {@value #SCALE} decimal places is a
+ * multiply and an add on primitives instead of a new {@link BigDecimal} per addition. Amounts with more
+ * decimal places, amounts that do not fit the fixed-point range and the overflow of the running total itself
+ * are added to a {@code BigDecimal} remainder instead, so the total never loses precision.
+ *
+ * <p>{@link #toBigDecimal()} gives exactly what {@code BigDecimal.ZERO} plus every amount gives: the same
+ * value at the largest scale of any amount added (at least 0), so {@code 8658 + 69475} is {@code 78133},
+ * not {@code 78133.0000}. Sums of consecutive runs of amounts can be {@link #add(MoneySum) merged}. Not
+ * thread-safe.
+ */
+public final class MoneySum {
+
+    /** Decimal places of the fixed-point units. */
+    public static final int SCALE = 4;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private long units;
+    // largest scale of any amount added so far; the scale of the result
+    private int scale;
+    // amounts (and totals) that did not fit into units; null until the first one
+    private BigDecimal remainder;
+
+    /** Adds {@code value}; null is skipped. */
+    public void add(BigDecimal value) {
+        if (value == null) {
+            return;
+        }
+        // a compact BigDecimal of scale 0 hands out its long without allocating
+        if (value.scale() == 0 && value.precision() <= 18) {
+            add(value.longValue(), 0);
+        } else if (value.scale() <= SCALE && value.precision() <= 18) {
+            add(value.unscaledValue().longValue(), value.scale());
+        } else {
+            addToRemainder(value);
+            if (value.scale() > scale) {
+                scale = value.scale();
+            }
+        }
+    }
+
+    /** Adds the amount {@code unscaled} &times; 10<sup>-scale</sup>, e.g. a value stored as unscaled long and scale. */
+    public void add(long unscaled, int scale) {
+        int shift = SCALE - scale;
+        if (shift < 0 || shift >= POWERS_OF_TEN.length
+                || unscaled > Long.MAX_VALUE / POWERS_OF_TEN[shift]
+                || unscaled < Long.MIN_VALUE / POWERS_OF_TEN[shift]) {
+            addToRemainder(BigDecimal.valueOf(unscaled, scale));
+        } else {
+            addUnits(unscaled * POWERS_OF_TEN[shift]);
+        }
+        if (scale > this.scale) {
+            this.scale = scale;
+        }
+    }
+
+    /** Folds in the sum of the amounts that came after this one's; {@code later} itself is not changed. */
+    public void add(MoneySum later) {
+        addUnits(later.units);
+        if (later.remainder != null) {
+            addToRemainder(later.remainder);
+        }
+        if (later.scale > scale) {
+            scale = later.scale;
+        }
+    }
+
+    public BigDecimal toBigDecimal() {
+        BigDecimal total = BigDecimal.valueOf(units, SCALE);
+        if (remainder != null) {
+            total = total.add(remainder);
+        }
+        // exact: every amount had at most this many decimal places, so the sum has too
+        return total.setScale(scale);
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(units);
+        out.writeInt(scale);
+        out.writeUTF(remainder != null ? remainder.toString() : "");
+    }
+
+    /** Adds a sum written by {@link #writeTo(DataOutput)}. */
+    public void readFrom(DataInput in) throws IOException {
+        addUnits(in.readLong());
+        scale = Math.max(scale, in.readInt());
+        String written = in.readUTF();
+        if (!written.isEmpty()) {
+            // BigDecimal's string form round-trips digits and scale exactly
+            addToRemainder(new BigDecimal(written));
+        }
+    }
+
+    private void addUnits(long value) {
+        long total = units + value;
+        if (((units ^ total) & (value ^ total)) < 0) {
+            // the running total overflowed: park it in the remainder and start over
+            addToRemainder(BigDecimal.valueOf(units, SCALE));
+            units = value;
+        } else {
+            units = total;
+        }
+    }
+
+    private void addToRemainder(BigDecimal value) {
+        remainder = remainder == null ? value : remainder.add(value);
+    }
+}
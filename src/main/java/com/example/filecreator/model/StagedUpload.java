@@ -0,0 +1,62 @@
+package com.example.filecreator.model;
+
+import java.time.Instant;
+
+public class StagedUpload {
+    private String handle;
+    private String fileName; // Original name of the uploaded file
+    private long size; // Upload size in bytes
+    private int recordCount;
+    private Instant expiresAt; // Pushed back on every use of the handle
+
+    public String getHandle() {
+        return handle;
+    }
+
+    public void setHandle(String handle) {
+        this.handle = handle;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public void setRecordCount(int recordCount) {
+        this.recordCount = recordCount;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "StagedUpload{" +
+                "handle='" + handle + '\'' +
+                ", fileName='" + fileName + '\'' +
+                ", size=" + size +
+                ", recordCount=" + recordCount +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.filecreator.model;
+
+public class StoreUpload {
+    private String store;
+    private String fileName; // Original name of the uploaded file
+    private long recordsAdded; // Rows merged into the store
+    private long duplicatesSkipped; // Rows whose BE Number and item were already in the store
+    private int uploads; // Uploads in the store, this one included
+
+    public String getStore() {
+        return store;
+    }
+
+    public void setStore(String store) {
+        this.store = store;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getRecordsAdded() {
+        return recordsAdded;
+    }
+
+    public void setRecordsAdded(long recordsAdded) {
+        this.recordsAdded = recordsAdded;
+    }
+
+    public long getDuplicatesSkipped() {
+        return duplicatesSkipped;
+    }
+
+    public void setDuplicatesSkipped(long duplicatesSkipped) {
+        this.duplicatesSkipped = duplicatesSkipped;
+    }
+
+    public int getUploads() {
+        return uploads;
+    }
+
+    public void setUploads(int uploads) {
+        this.uploads = uploads;
+    }
+
+    @Override
+    public String toString() {
+        return "StoreUpload{" +
+                "store='" + store + '\'' +
+                ", fileName='" + fileName + '\'' +
+                ", recordsAdded=" + recordsAdded +
+                ", duplicatesSkipped=" + duplicatesSkipped +
+                ", uploads=" + uploads +
+                '}';
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.filecreator.model;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense int codes to distinct strings, in first-seen order, and hands back one canonical instance
+ * per value. Lookups go through an open-addressing table of codes, so no boxed keys are created.
+ *
+ * <p>A dictionary may be capped: once {@code maxSize} values are known, new values are no longer added
+ * ({@link #code(String)} returns {@link #NO_CODE} and {@link #intern(String)} returns its argument), while
+ * known values keep resolving. Not thread-safe.
+ */
+public final class StringDictionary {
+
+    public static final int NO_CODE = -1;
+
+    private final int maxSize;
+    private String[] values = new String[16];
+    private int[] table = new int[32];
+    private int size;
+
+    public StringDictionary() {
+        this(Integer.MAX_VALUE);
+    }
+
+    public StringDictionary(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /** The code of {@code value}, adding it if it is new; {@link #NO_CODE} for null or a full dictionary. */
+    public int code(String value) {
+        if (value == null) {
+            return NO_CODE;
+        }
+        int mask = table.length - 1;
+        int slot = spread(value.hashCode()) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) {
+                break;
+            }
+            String known = values[entry - 1];
+            if (known == value || known.equals(value)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= maxSize) {
+            return NO_CODE;
+        }
+        int code = size++;
+        if (code == values.length) {
+            values = Arrays.copyOf(values, code * 2);
+        }
+        values[code] = value;
+        table[slot] = code + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return code;
+    }
+
+    /** The canonical instance equal to {@code value}, or {@code value} itself if it is not (and cannot be) added. */
+    public String intern(String value) {
+        int code = code(value);
+        return code == NO_CODE ? value : values[code];
+    }
+
+    public String value(int code) {
+        return code == NO_CODE ? null : values[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        int[] grown = new int[table.length * 2];
+        int mask = grown.length - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = spread(values[code].hashCode()) & mask;
+            while (grown[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            grown[slot] = code + 1;
+        }
+        table = grown;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,519 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.AggregateStore;
+import com.example.filecreator.model.AggregatedExcelRecord;
+import com.example.filecreator.model.ExcelRecord;
+import com.example.filecreator.model.ExcelRecordView;
+import com.example.filecreator.model.StoreUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Year-to-date aggregates kept on local disk across uploads. Each upload to a named store, e.g. one month's
+ * bills of entry, is aggregated by importer and merged into what the store already holds, so aggregated
+ * documents for the whole period are generated from the store without sending or parsing the earlier files
+ * again. The result is exactly that of aggregating all uploads, in upload order, as one file.
+ *
+ * <p>Rows are deduplicated by BE Number and item: the key of a row is a 64-bit SHA-256 prefix of its BE
+ * Number, BE Date, HS code, item description and assessable value, together with how many rows with the same
+ * values came before it in the upload. A row whose key is already in the store is skipped, so uploading a
+ * month twice, or slices that overlap, adds every item once.
+ *
+ * <p>On disk a store is a directory with a compacted snapshot and an append-only log. Every upload appends
+ * one segment to the log, holding its partial aggregation and the keys it added, behind a length and CRC so a
+ * segment torn by a crash is recognised and dropped. Once the log holds {@code filecreator.store.compact-after}
+ * segments they are folded into a new snapshot, which is written next to the old one and moved over it. Each
+ * segment has a sequence number and the snapshot records the last one it contains, so a log left behind by
+ * an interrupted compaction is never applied twice.
+ */
+@Service
+public class AggregateStoreService {
+
+    private static final Logger log = LoggerFactory.getLogger(AggregateStoreService.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x46435331; // "FCS1"
+    private static final String SNAPSHOT = "snapshot.bin";
+    private static final String LOG = "log.bin";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // store names end up in directory names
+    private static final Pattern STORE_NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,63}");
+
+    @Autowired
+    private ExcelParserService parserService;
+
+    @Autowired
+    private DataAggregationService dataAggregationService;
+
+    /** Directory holding one subdirectory per store; unlike the other work directories it must survive restarts. */
+    @Value("${filecreator.store.dir:${user.home}/.filecreator/stores}")
+    private String storeDir = Paths.get(System.getProperty("user.home"), ".filecreator", "stores").toString();
+
+    /** Number of log segments (uploads) after which the log is folded into the snapshot. */
+    @Value("${filecreator.store.compact-after:12}")
+    private int compactAfter = 12;
+
+    // one lock per store name; uploads and reads of a store are serialized, different stores run in parallel
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void createStoreDir() throws IOException {
+        Files.createDirectories(Paths.get(storeDir));
+    }
+
+    /**
+     * Aggregates the rows of {@code file} that are not in the store yet and merges them into it, creating the
+     * store on its first upload.
+     *
+     * @throws IllegalArgumentException if {@code store} is not a valid store name
+     */
+    public StoreUpload ingest(String store, File file, String fileName) throws IOException {
+        Path dir = storePath(store);
+        synchronized (lock(store)) {
+            Files.createDirectories(dir);
+            Contents contents = read(dir, false);
+            Ingest ingest = new Ingest(contents.keys);
+            parserService.parse(file, ingest);
+
+            Segment segment = new Segment();
+            segment.sequence = contents.lastSequence + 1;
+            segment.fileName = fileName;
+            segment.createdAt = Instant.now();
+            segment.records = ingest.added;
+            segment.duplicates = ingest.duplicates;
+            segment.keys = ingest.newKeys.sorted();
+            append(dir, contents.logLength, segment, ingest.aggregation);
+            log.debug("Store {}: {} added {} records, skipped {} duplicates", store, fileName,
+                    ingest.added, ingest.duplicates);
+            if (contents.segments + 1 >= compactAfter) {
+                compact(dir);
+            }
+
+            StoreUpload upload = new StoreUpload();
+            upload.setStore(store);
+            upload.setFileName(fileName);
+            upload.setRecordsAdded(ingest.added);
+            upload.setDuplicatesSkipped(ingest.duplicates);
+            upload.setUploads(contents.uploads + 1);
+            return upload;
+        }
+    }
+
+    /**
+     * Details of a store, or null if there is no such store.
+     *
+     * @throws IllegalArgumentException if {@code store} is not a valid store name
+     */
+    public AggregateStore describe(String store) throws IOException {
+        Path dir = storePath(store);
+        synchronized (lock(store)) {
+            if (!exists(dir)) {
+                return null;
+            }
+            Contents contents = read(dir, true);
+            AggregateStore described = new AggregateStore();
+            described.setName(store);
+            described.setUploads(contents.uploads);
+            described.setRecords(contents.records);
+            described.setDuplicatesSkipped(contents.duplicates);
+            described.setImporters(contents.aggregation.roots().get(0).children.size());
+            described.setUpdatedAt(contents.updatedAt);
+            return described;
+        }
+    }
+
+    /**
+     * The store's importer aggregation, in the order of {@link DataAggregationService#aggregateByImporter};
+     * null if there is no such store.
+     *
+     * @throws IllegalArgumentException if {@code store} is not a valid store name
+     */
+    public List<AggregatedExcelRecord> aggregated(String store) throws IOException {
+        Path dir = storePath(store);
+        Contents contents;
+        synchronized (lock(store)) {
+            if (!exists(dir)) {
+                return null;
+            }
+            contents = read(dir, true);
+        }
+        List<AggregatedExcelRecord> aggregatedRecords = contents.aggregation.result();
+        for (AggregatedExcelRecord aggregated : aggregatedRecords) {
+            aggregated.setGrouping(null);
+            aggregated.setGroupKey(null);
+        }
+        return aggregatedRecords;
+    }
+
+    /**
+     * Deletes a store; false if there was no such store.
+     *
+     * @throws IllegalArgumentException if {@code store} is not a valid store name
+     */
+    public boolean discard(String store) throws IOException {
+        Path dir = storePath(store);
+        synchronized (lock(store)) {
+            if (!Files.isDirectory(dir)) {
+                return false;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(dir);
+            return true;
+        }
+    }
+
+    private Path storePath(String store) {
+        if (store == null || !STORE_NAME.matcher(store).matches()) {
+            throw new IllegalArgumentException("Invalid store name '" + store
+                    + "'; use up to 64 letters, digits, '.', '_' or '-', starting with a letter or digit");
+        }
+        return Paths.get(storeDir, store);
+    }
+
+    private Object lock(String store) {
+        return locks.computeIfAbsent(store, name -> new Object());
+    }
+
+    private static boolean exists(Path dir) {
+        return Files.exists(dir.resolve(SNAPSHOT)) || Files.exists(dir.resolve(LOG));
+    }
+
+    private DataAggregationService.GroupedAggregation newAggregation() {
+        return dataAggregationService.newGroupedAggregation(List.of(GroupingSpec.IMPORTER));
+    }
+
+    /** Reads the snapshot and the log; the aggregation is only read (and merged) if asked for. */
+    private Contents read(Path dir, boolean withAggregation) throws IOException {
+        Contents contents = new Contents(withAggregation ? newAggregation() : null);
+        Path snapshot = dir.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), BUFFER_SIZE))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not an aggregate store snapshot: " + snapshot);
+                }
+                contents.lastSequence = in.readLong();
+                contents.uploads = in.readInt();
+                contents.records = in.readLong();
+                contents.duplicates = in.readLong();
+                contents.updatedAt = Instant.ofEpochMilli(in.readLong());
+                contents.keys.addAll(readKeys(in));
+                if (withAggregation) {
+                    contents.aggregation.mergeFrom(in);
+                }
+            }
+        }
+        Path logFile = dir.resolve(LOG);
+        if (Files.exists(logFile)) {
+            long size = Files.size(logFile);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile), BUFFER_SIZE))) {
+                byte[] payload;
+                while ((payload = readSegment(in, size - contents.logLength)) != null) {
+                    contents.logLength += 8 + payload.length;
+                    DataInputStream segment = new DataInputStream(new ByteArrayInputStream(payload));
+                    long sequence = segment.readLong();
+                    if (sequence <= contents.lastSequence) {
+                        // already in the snapshot: left over from a compaction that did not get to delete the log
+                        continue;
+                    }
+                    contents.lastSequence = sequence;
+                    contents.segments++;
+                    contents.uploads++;
+                    readText(segment); // file name
+                    contents.updatedAt = Instant.ofEpochMilli(segment.readLong());
+                    contents.records += segment.readLong();
+                    contents.duplicates += segment.readLong();
+                    contents.keys.addAll(readKeys(segment));
+                    if (withAggregation) {
+                        contents.aggregation.mergeFrom(segment);
+                    }
+                }
+            }
+            if (contents.logLength < size) {
+                log.warn("Ignoring {} bytes of incomplete or damaged log at the end of {}", size - contents.logLength, logFile);
+            }
+        }
+        contents.keys.sort();
+        return contents;
+    }
+
+    // the payload of the next segment, or null at the end of the log or at a torn or damaged segment
+    private static byte[] readSegment(DataInputStream in, long remaining) throws IOException {
+        if (remaining < 8) {
+            return null;
+        }
+        int length = in.readInt();
+        int crc = in.readInt();
+        if (length < 8 || length > remaining - 8) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        try {
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+        CRC32 check = new CRC32();
+        check.update(payload);
+        return (int) check.getValue() == crc ? payload : null;
+    }
+
+    private static void append(Path dir, long validLength, Segment segment, DataAggregationService.GroupedAggregation aggregation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(segment.sequence);
+            writeText(out, segment.fileName);
+            out.writeLong(segment.createdAt.toEpochMilli());
+            out.writeLong(segment.records);
+            out.writeLong(segment.duplicates);
+            writeKeys(out, segment.keys, segment.keys.length);
+            aggregation.writeTo(out);
+        }
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(payload.length).putInt((int) crc.getValue());
+        header.flip();
+        try (FileChannel channel = FileChannel.open(dir.resolve(LOG), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // a torn segment at the end is overwritten
+            channel.truncate(validLength);
+            channel.position(validLength);
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(payload));
+            channel.force(true);
+        }
+    }
+
+    private void compact(Path dir) throws IOException {
+        Contents contents = read(dir, true);
+        Path snapshot = dir.resolve(SNAPSHOT);
+        Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile())) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(contents.lastSequence);
+            out.writeInt(contents.uploads);
+            out.writeLong(contents.records);
+            out.writeLong(contents.duplicates);
+            out.writeLong(contents.updatedAt.toEpochMilli());
+            writeKeys(out, contents.keys.values, contents.keys.size);
+            contents.aggregation.writeTo(out);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // everything in the log is in the snapshot now; should this fail, the sequence numbers skip it
+        Files.deleteIfExists(dir.resolve(LOG));
+        log.debug("Compacted store {} ({} uploads, {} items)", dir.getFileName(), contents.uploads, contents.keys.size);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeKeys(DataOutput out, long[] keys, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(keys[i]);
+        }
+    }
+
+    private static ItemKeys readKeys(DataInput in) throws IOException {
+        int count = in.readInt();
+        ItemKeys keys = new ItemKeys(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(in.readLong());
+        }
+        return keys;
+    }
+
+    private static void writeText(DataOutput out, String text) throws IOException {
+        SpillingAggregation.writeText(out, text);
+    }
+
+    private static String readText(DataInput in) throws IOException {
+        return SpillingAggregation.readText(in);
+    }
+
+    private static final class Contents {
+        private final DataAggregationService.GroupedAggregation aggregation;
+        private final ItemKeys keys = new ItemKeys(1024);
+        private long lastSequence;
+        private int uploads;
+        private long records;
+        private long duplicates;
+        private Instant updatedAt = Instant.EPOCH;
+        // segments not yet in the snapshot, and the bytes of the log that hold complete segments
+        private int segments;
+        private long logLength;
+
+        private Contents(DataAggregationService.GroupedAggregation aggregation) {
+            this.aggregation = aggregation;
+        }
+    }
+
+    private static final class Segment {
+        private long sequence;
+        private String fileName;
+        private Instant createdAt;
+        private long records;
+        private long duplicates;
+        private long[] keys;
+    }
+
+    /** Aggregates the rows of one upload whose keys are neither in the store nor earlier in the upload. */
+    private final class Ingest implements RecordSink {
+        private final ItemKeys known;
+        private final DataAggregationService.GroupedAggregation aggregation = newAggregation();
+        private final ItemKeys newKeys = new ItemKeys(1024);
+        private final ItemKeyer keyer = new ItemKeyer();
+        private long added;
+        private long duplicates;
+
+        private Ingest(ItemKeys known) {
+            this.known = known;
+        }
+
+        @Override
+        public void accept(ExcelRecord record) {
+            long key = keyer.key(record);
+            if (known.contains(key)) {
+                duplicates++;
+            } else {
+                newKeys.add(key);
+                aggregation.add(record);
+                added++;
+            }
+        }
+    }
+
+    /**
+     * Item keys of one upload. Equal rows within an upload are told apart by their occurrence, so a row that
+     * appears twice in a month is kept twice, and twice only however often the month is uploaded.
+     */
+    private static final class ItemKeyer {
+        private final MessageDigest digest;
+        private final Map<Long, Integer> occurrences = new HashMap<>();
+
+        private ItemKeyer() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        long key(ExcelRecordView record) {
+            field(record.getBeNumber());
+            field(Integer.toString(record.beEpochDay()));
+            field(record.getEightDigitHsCode());
+            field(record.getFullItemDescription());
+            BigDecimal assessableValue = record.getAssessableValueAmount();
+            // 8658 from a spreadsheet and 8658.00 from a CSV are the same amount
+            field(assessableValue != null ? assessableValue.stripTrailingZeros().toPlainString() : null);
+            long key = ByteBuffer.wrap(digest.digest()).getLong();
+            int occurrence = occurrences.merge(key, 1, Integer::sum) - 1;
+            return occurrence == 0 ? key : mix(key + occurrence * 0x9e3779b97f4a7c15L);
+        }
+
+        // null and empty are different values: null is a lone 1 byte, every value is followed by a 0 byte
+        private void field(String value) {
+            if (value == null) {
+                digest.update((byte) 1);
+            } else {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+        }
+
+        // MurmurHash3 finalizer
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    /** A growable set of item keys: appended unsorted, then {@link #sort() sorted} once for lookups. */
+    private static final class ItemKeys {
+        private long[] values;
+        private int size;
+
+        private ItemKeys(int capacity) {
+            values = new long[Math.max(capacity, 16)];
+        }
+
+        void add(long key) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length + (values.length >> 1));
+            }
+            values[size++] = key;
+        }
+
+        void addAll(ItemKeys keys) {
+            if (size + keys.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + keys.size, values.length + (values.length >> 1)));
+            }
+            System.arraycopy(keys.values, 0, values, size, keys.size);
+            size += keys.size;
+        }
+
+        void sort() {
+            Arrays.sort(values, 0, size);
+        }
+
+        long[] sorted() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        boolean contains(long key) {
+            return Arrays.binarySearch(values, 0, size, key) >= 0;
+        }
+    }
+}
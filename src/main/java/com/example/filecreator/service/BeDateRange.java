@@ -0,0 +1,123 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.BeDate;
+import com.example.filecreator.model.ExcelRecordBatch;
+import com.example.filecreator.model.ExcelRecordView;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An inclusive range of BE Dates that records are filtered by, open at either end. Records are compared by
+ * the epoch day parsed at ingest ({@link ExcelRecordView#beEpochDay()}); records without a recognised BE
+ * Date are never in a range.
+ */
+public final class BeDateRange {
+
+    private final LocalDate from;
+    private final LocalDate to;
+    private final int fromDay;
+    private final int toDay;
+
+    private BeDateRange(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+        this.fromDay = from != null ? (int) from.toEpochDay() : BeDate.NONE + 1;
+        this.toDay = to != null ? (int) to.toEpochDay() : Integer.MAX_VALUE;
+    }
+
+    /**
+     * The range between two ISO dates ({@code 2021-04-01}), either of which may be null or blank; null if
+     * both are.
+     *
+     * @throws IllegalArgumentException if a date is malformed or {@code from} is after {@code to}
+     */
+    public static BeDateRange parse(String from, String to) {
+        LocalDate fromDate = parseDate("beDateFrom", from);
+        LocalDate toDate = parseDate("beDateTo", to);
+        if (fromDate == null && toDate == null) {
+            return null;
+        }
+        if (fromDate != null && toDate != null && fromDate.isAfter(toDate)) {
+            throw new IllegalArgumentException("beDateFrom " + fromDate + " is after beDateTo " + toDate);
+        }
+        return new BeDateRange(fromDate, toDate);
+    }
+
+    public boolean contains(int epochDay) {
+        return epochDay != BeDate.NONE && epochDay >= fromDay && epochDay <= toDay;
+    }
+
+    public boolean contains(ExcelRecordView record) {
+        return contains(record.beEpochDay());
+    }
+
+    /** Wraps {@code sink} so only records in the range reach it. */
+    public RecordSink filter(RecordSink sink) {
+        return record -> {
+            if (contains(record)) {
+                sink.accept(record);
+            }
+        };
+    }
+
+    /** The rows of {@code batch} in the range, in order; selected on the batch's epoch-day column. */
+    public List<ExcelRecordView> select(ExcelRecordBatch batch) {
+        int[] selected = new int[Math.min(batch.size(), 1024)];
+        int count = 0;
+        for (int row = 0; row < batch.size(); row++) {
+            if (contains(batch.beEpochDay(row))) {
+                if (count == selected.length) {
+                    selected = Arrays.copyOf(selected, Math.min(batch.size(), 2 * count));
+                }
+                selected[count++] = row;
+            }
+        }
+        return new SelectedRows(batch, selected, count);
+    }
+
+    @Override
+    public String toString() {
+        return (from != null ? from.toString() : "") + ".." + (to != null ? to.toString() : "");
+    }
+
+    private static LocalDate parseDate(String name, String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid " + name + " '" + value.trim() + "'; expected yyyy-MM-dd");
+        }
+    }
+
+    private static final class SelectedRows extends AbstractList<ExcelRecordView> implements RandomAccess {
+        private final ExcelRecordBatch batch;
+        private final int[] rows;
+        private final int size;
+
+        SelectedRows(ExcelRecordBatch batch, int[] rows, int size) {
+            this.batch = batch;
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        public ExcelRecordView get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Row " + index + " of " + size);
+            }
+            return batch.row(rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.filecreator.service;
+
+import java.math.BigDecimal;
+
+/**
+ * Typed decoding of numeric and integer cells without regular expressions or intermediate strings.
+ *
+ * <p>Text is scanned once: thousands separators ({@code ,}) and percent signs are skipped wherever they
+ * appear and surrounding whitespace is ignored, which is what the old {@code replaceAll("[,%]", "")}
+ * followed by {@code new BigDecimal(...)} accepted. Digits are accumulated into a {@code long} unscaled
+ * value, so the common case allocates nothing but the resulting {@link BigDecimal}. Numeric spreadsheet
+ * cells skip text entirely and are converted from their {@code double} value.
+ *
+ * <p>Each instance counts the non-blank cells it could not decode per {@link RecordField}, so a parse can
+ * report them instead of silently leaving the field {@code null}.
+ */
+public final class CellDecoder {
+
+    /** Marker returned by the static scanners for text that is not a number; compared by identity. */
+    private static final BigDecimal INVALID_DECIMAL = new BigDecimal("-0.0");
+    private static final long INVALID_INTEGER = Long.MIN_VALUE;
+    private static final long BLANK_INTEGER = Long.MIN_VALUE + 1;
+
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final int[] invalidByField = new int[RecordField.all().length];
+
+    public BigDecimal decimal(RecordField field, CharSequence text) {
+        BigDecimal value = scanDecimal(text);
+        if (value == INVALID_DECIMAL) {
+            invalidByField[field.ordinal()]++;
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Converts a numeric spreadsheet cell the way its plain-string rendering used to round-trip: regular
+     * cells lose trailing zeros, cached formula results keep the scale of {@link BigDecimal#valueOf(double)},
+     * and neither ever ends up with a negative scale.
+     */
+    public BigDecimal decimal(RecordField field, double numeric, boolean formula) {
+        if (Double.isNaN(numeric) || Double.isInfinite(numeric)) {
+            invalidByField[field.ordinal()]++;
+            return null;
+        }
+        BigDecimal value = BigDecimal.valueOf(numeric);
+        if (!formula) value = value.stripTrailingZeros();
+        return value.scale() < 0 ? value.setScale(0) : value;
+    }
+
+    public Integer integer(RecordField field, CharSequence text) {
+        long value = scanInteger(text);
+        if (value == BLANK_INTEGER) return null;
+        if (value == INVALID_INTEGER) {
+            invalidByField[field.ordinal()]++;
+            return null;
+        }
+        return (int) value;
+    }
+
+    public Integer integer(RecordField field, double numeric) {
+        int value = (int) numeric;
+        if (value != numeric) {
+            invalidByField[field.ordinal()]++;
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Renders a numeric spreadsheet cell as text the way the DOM-based parser did: plain notation, with
+     * trailing zeros stripped unless the value is a cached formula result.
+     */
+    public static String numericText(double value, boolean formula) {
+        BigDecimal decimal = BigDecimal.valueOf(value);
+        return formula ? decimal.toPlainString() : decimal.stripTrailingZeros().toPlainString();
+    }
+
+    public int invalidCount(RecordField field) {
+        return invalidByField[field.ordinal()];
+    }
+
+    /** Adds the counts of a decoder that worked on another part of the same input. */
+    public void add(CellDecoder other) {
+        for (int i = 0; i < invalidByField.length; i++) invalidByField[i] += other.invalidByField[i];
+    }
+
+    public int totalInvalid() {
+        int total = 0;
+        for (int count : invalidByField) total += count;
+        return total;
+    }
+
+    /**
+     * Parses a decimal such as {@code "-1,234.50"}, {@code "77.28%"} or {@code "1E+3"}.
+     *
+     * @return the value, {@code null} for blank text, or {@link #INVALID_DECIMAL}
+     */
+    static BigDecimal scanDecimal(CharSequence s) {
+        if (s == null) return null;
+        int start = 0;
+        int end = s.length();
+        while (start < end && isIgnorable(s.charAt(start))) start++;
+        while (end > start && isIgnorable(s.charAt(end - 1))) end--;
+        if (start == end) return null;
+
+        int i = start;
+        boolean negative = false;
+        char first = s.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long unscaled = 0;
+        int digits = 0;
+        int significant = 0;
+        int scale = 0;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            char ch = s.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                digits++;
+                if (significant > 0 || ch != '0') significant++;
+                if (significant > MAX_LONG_DIGITS) return scanWideDecimal(s, start, end);
+                unscaled = unscaled * 10 + (ch - '0');
+                if (seenPoint) scale++;
+            } else if (ch == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (ch == ',' || ch == '%') {
+                // thousands separators and percent signs carry no value
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) return INVALID_DECIMAL;
+
+        if (i < end) {
+            char ch = s.charAt(i);
+            if (ch != 'e' && ch != 'E') return INVALID_DECIMAL;
+            long exponent = scanExponent(s, i + 1, end);
+            if (exponent == INVALID_INTEGER) return INVALID_DECIMAL;
+            long adjusted = scale - exponent;
+            if (adjusted > Integer.MAX_VALUE || adjusted < Integer.MIN_VALUE) return INVALID_DECIMAL;
+            scale = (int) adjusted;
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+
+    private static long scanExponent(CharSequence s, int i, int end) {
+        boolean negative = false;
+        while (i < end && (s.charAt(i) == ',' || s.charAt(i) == '%')) i++;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        long exponent = 0;
+        int digits = 0;
+        for (; i < end; i++) {
+            char ch = s.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                digits++;
+                exponent = exponent * 10 + (ch - '0');
+                if (exponent > Integer.MAX_VALUE) return INVALID_INTEGER;
+            } else if (ch != ',' && ch != '%') {
+                return INVALID_INTEGER;
+            }
+        }
+        if (digits == 0) return INVALID_INTEGER;
+        return negative ? -exponent : exponent;
+    }
+
+    /** Slow path for more significant digits than a {@code long} holds. */
+    private static BigDecimal scanWideDecimal(CharSequence s, int start, int end) {
+        char[] cleaned = new char[end - start];
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            char ch = s.charAt(i);
+            if (ch != ',' && ch != '%') cleaned[n++] = ch;
+        }
+        try {
+            return new BigDecimal(cleaned, 0, n);
+        } catch (NumberFormatException e) {
+            return INVALID_DECIMAL;
+        }
+    }
+
+    /**
+     * Parses an integer the lenient way serial numbers always were: every character other than a digit
+     * or {@code '-'} is ignored ({@code "#12"} is 12), except that a decimal point followed only by zeros
+     * ends the number ({@code "12.0"} is 12).
+     *
+     * @return the value, {@link #BLANK_INTEGER} for blank text, or {@link #INVALID_INTEGER}
+     */
+    static long scanInteger(CharSequence s) {
+        if (s == null) return BLANK_INTEGER;
+        int end = s.length();
+        boolean blank = true;
+        boolean negative = false;
+        int digits = 0;
+        long value = 0;
+        for (int i = 0; i < end; i++) {
+            char ch = s.charAt(i);
+            if (ch > ' ') blank = false;
+            if (ch >= '0' && ch <= '9') {
+                value = value * 10 + (ch - '0');
+                if (value > (long) Integer.MAX_VALUE + 1) return INVALID_INTEGER;
+                digits++;
+            } else if (ch == '-') {
+                // only a single leading minus survives Integer.parseInt
+                if (negative || digits > 0) return INVALID_INTEGER;
+                negative = true;
+            } else if (ch == '.' && digits > 0 && onlyZerosAfter(s, i + 1, end)) {
+                break;
+            }
+        }
+        if (blank) return BLANK_INTEGER;
+        if (digits == 0) return INVALID_INTEGER;
+        long signed = negative ? -value : value;
+        return signed > Integer.MAX_VALUE ? INVALID_INTEGER : signed;
+    }
+
+    private static boolean onlyZerosAfter(CharSequence s, int from, int end) {
+        for (int i = from; i < end; i++) {
+            char ch = s.charAt(i);
+            if (ch != '0' && ch > ' ') return false;
+        }
+        return true;
+    }
+
+    private static boolean isIgnorable(char ch) {
+        return ch <= ' ' || ch == ',' || ch == '%';
+    }
+}
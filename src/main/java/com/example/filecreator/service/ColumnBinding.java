@@ -0,0 +1,86 @@
+package com.example.filecreator.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A header row resolved once into column ordinals for every {@link RecordField}, so that data rows can
+ * be copied straight from cell or CSV indices instead of going through a per-row header map.
+ *
+ * <p>Matching follows the rules the parser has always used: for each alias in order, an exact header
+ * match wins, otherwise the first header that equals the alias ignoring case and surrounding
+ * whitespace. A field whose aliases match nothing stays unbound and is left {@code null}.
+ */
+final class ColumnBinding {
+
+    private static final RecordField[] NO_FIELDS = new RecordField[0];
+
+    private final int[] columnByField;
+    private final RecordField[][] fieldsByColumn;
+
+    private ColumnBinding(int[] columnByField, RecordField[][] fieldsByColumn) {
+        this.columnByField = columnByField;
+        this.fieldsByColumn = fieldsByColumn;
+    }
+
+    /**
+     * @param headers header cells by column index; {@code null} entries are columns without a header
+     */
+    static ColumnBinding resolve(List<String> headers) {
+        RecordField[] fields = RecordField.all();
+        int[] columnByField = new int[fields.length];
+        int width = 0;
+        for (RecordField field : fields) {
+            int column = findColumn(headers, field.aliases());
+            columnByField[field.ordinal()] = column;
+            width = Math.max(width, column + 1);
+        }
+
+        List<List<RecordField>> byColumn = new ArrayList<>(width);
+        for (int i = 0; i < width; i++) byColumn.add(new ArrayList<>(1));
+        for (RecordField field : fields) {
+            int column = columnByField[field.ordinal()];
+            if (column >= 0) byColumn.get(column).add(field);
+        }
+        RecordField[][] fieldsByColumn = new RecordField[width][];
+        for (int i = 0; i < width; i++) {
+            List<RecordField> bound = byColumn.get(i);
+            fieldsByColumn[i] = bound.isEmpty() ? NO_FIELDS : bound.toArray(NO_FIELDS);
+        }
+        return new ColumnBinding(columnByField, fieldsByColumn);
+    }
+
+    private static int findColumn(List<String> headers, List<String> aliases) {
+        for (String alias : aliases) {
+            int exact = headers.indexOf(alias);
+            if (exact >= 0) return exact;
+            String wanted = alias.trim();
+            for (int i = 0; i < headers.size(); i++) {
+                String header = headers.get(i);
+                if (header != null && header.trim().equalsIgnoreCase(wanted)) return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Column the field is read from, or -1 when the sheet has no matching header. */
+    int column(RecordField field) {
+        return columnByField[field.ordinal()];
+    }
+
+    /** Fields fed by the given column; empty for columns nothing reads. */
+    RecordField[] fieldsAt(int column) {
+        return column >= 0 && column < fieldsByColumn.length ? fieldsByColumn[column] : NO_FIELDS;
+    }
+
+    /** One past the highest bound column; cells at or beyond it are never read. */
+    int width() {
+        return fieldsByColumn.length;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnBinding" + Arrays.toString(columnByField);
+    }
+}
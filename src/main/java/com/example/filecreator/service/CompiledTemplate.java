@@ -0,0 +1,407 @@
+package com.example.filecreator.service;
+
+import org.apache.poi.ooxml.POIXMLTypeLoader;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTDocument1;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The Word template parsed once for rendering many documents. Compiling finds every paragraph with
+ * {@code {{placeholder}}} text, in the same paragraphs and the same way as filling an {@link XWPFDocument}
+ * would, records its position and split into literal text and placeholder names (a placeholder split over
+ * several runs, as Word often saves them, is one name), and already rebuilds it the way every rendered
+ * document gets it: runs removed, one plain run left for the text.
+ *
+ * <p>The prepared document XML is then serialized once and cut into static byte segments around the text
+ * of those runs. {@link #render} writes a document by streaming the segments with the XML-escaped paragraph
+ * texts in between, without any XML object model; {@link #renderXml} copies the prepared XML objects instead,
+ * sets the texts and lets XMLBeans serialize them, the way POI writes a filled {@code XWPFDocument}. Both
+ * give the same text; the bytes are identical too, except that XMLBeans writes long texts with many
+ * {@code &} or {@code <} as CDATA where the segments use entities.
+ *
+ * <p>Only the main document differs from the template, so it is the only part deflated per document; styles,
+ * theme, fonts, media and the rest go into every DOCX as the template's compressed bytes with their CRCs
+ * ({@link RawZip}).
+ *
+ * <p>Immutable once compiled and safe to render from several threads.
+ */
+final class CompiledTemplate {
+
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{\\{([^}]+)\\}\\}");
+    // every paragraph in document order, table cells included, to find the placeholder paragraphs in a copy
+    private static final String ALL_PARAGRAPHS =
+            "declare namespace w='http://schemas.openxmlformats.org/wordprocessingml/2006/main' .//w:p";
+    private static final QName XML_SPACE = new QName("http://www.w3.org/XML/1998/namespace", "space");
+    // put around every placeholder paragraph while cutting the serialized document into segments
+    private static final String SLOT_COMMENT = "filecreator-slot";
+    private static final String SLOT_BOUNDARY = "<!--" + SLOT_COMMENT + "-->";
+
+    // how XWPFDocument saves its main part
+    private static final XmlOptions SAVE_OPTIONS = new XmlOptions(POIXMLTypeLoader.DEFAULT_XML_OPTIONS)
+            .setSaveSyntheticDocumentElement(new QName(CTDocument1.type.getName().getNamespaceURI(), "document"));
+
+    private final Object fileKey;
+    private final long lastModified;
+    private final long size;
+    private final String fingerprint;
+    // the template's ZIP entries, still compressed; all but the main document are copied into every render
+    private final List<RawZip.Entry> entries;
+    private final String documentPartName;
+    private final int packageSize;
+    private final CTDocument1 document;
+    private final List<Slot> slots;
+    // the serialized document around the slots: segments[i] comes before slot i, the last one after all
+    private final byte[][] segments;
+    // start and end tag of the text element of a slot's run, e.g. <w:t> and </w:t>
+    private final byte[] textStart;
+    private final byte[] textStartPreserve;
+    private final byte[] textEnd;
+    private final byte[] emptyText;
+
+    private CompiledTemplate(BasicFileAttributes attributes, String fingerprint, List<RawZip.Entry> entries,
+                             String documentPartName, CTDocument1 document, List<Slot> slots) throws IOException {
+        this.fileKey = attributes.fileKey();
+        this.lastModified = attributes.lastModifiedTime().toMillis();
+        this.size = attributes.size();
+        this.fingerprint = fingerprint;
+        this.entries = entries;
+        this.documentPartName = documentPartName;
+        this.packageSize = (int) Math.min(attributes.size(), Integer.MAX_VALUE - 8);
+        this.document = document;
+        this.slots = slots;
+
+        // serialize the document twice, slot paragraphs between boundary comments: once prepared, with a
+        // marker as the text of the run, and once as in the template, for slots where nothing gets replaced
+        String marker = "filecreator-text-" + UUID.randomUUID();
+        CTDocument1 marked = (CTDocument1) document.copy();
+        XmlObject[] paragraphs = marked.selectPath(ALL_PARAGRAPHS);
+        for (Slot slot : slots) {
+            CTP paragraph = (CTP) paragraphs[slot.index];
+            try (XmlCursor cursor = paragraph.newCursor()) {
+                cursor.insertComment(SLOT_COMMENT);
+                cursor.toEndToken();
+                cursor.toNextToken();
+                cursor.insertComment(SLOT_COMMENT);
+            }
+            paragraph.getRArray(paragraph.sizeOfRArray() - 1).addNewT().setStringValue(marker);
+        }
+        String[] prepared = split(marked);
+        for (Slot slot : slots) {
+            ((CTP) paragraphs[slot.index]).set(slot.original);
+        }
+        String[] original = split(marked);
+        if (prepared.length != 2 * slots.size() + 1 || original.length != prepared.length) {
+            throw new IOException("Could not cut the template document XML at its placeholder paragraphs");
+        }
+
+        segments = new byte[slots.size() + 1][];
+        String tag = "w:t";
+        for (int i = 0; i <= slots.size(); i++) {
+            if (!prepared[2 * i].equals(original[2 * i])) {
+                throw new IOException("Template document XML does not serialize consistently");
+            }
+            segments[i] = prepared[2 * i].getBytes(StandardCharsets.UTF_8);
+            if (i == slots.size()) {
+                break;
+            }
+            String paragraph = prepared[2 * i + 1];
+            int text = paragraph.indexOf('>' + marker + "</");
+            int tagStart = text < 0 ? -1 : paragraph.lastIndexOf('<', text);
+            if (tagStart < 0) {
+                throw new IOException("Could not cut the template document XML at placeholder paragraph " + i);
+            }
+            // the text element, as XMLBeans names it with the document's prefix
+            String slotTag = paragraph.substring(tagStart + 1, text);
+            if (i > 0 && !slotTag.equals(tag)) {
+                throw new IOException("Could not cut the template document XML at placeholder paragraph " + i);
+            }
+            tag = slotTag;
+            String textEnd = '>' + marker + "</" + tag + '>';
+            if (!paragraph.startsWith(textEnd, text)) {
+                throw new IOException("Could not cut the template document XML at placeholder paragraph " + i);
+            }
+            Slot slot = slots.get(i);
+            slot.head = paragraph.substring(0, tagStart).getBytes(StandardCharsets.UTF_8);
+            slot.tail = paragraph.substring(text + textEnd.length()).getBytes(StandardCharsets.UTF_8);
+            slot.originalXml = original[2 * i + 1].getBytes(StandardCharsets.UTF_8);
+        }
+        textStart = ('<' + tag + '>').getBytes(StandardCharsets.UTF_8);
+        textStartPreserve = ('<' + tag + " xml:space=\"preserve\">").getBytes(StandardCharsets.UTF_8);
+        textEnd = ("</" + tag + '>').getBytes(StandardCharsets.UTF_8);
+        emptyText = ('<' + tag + "/>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compiles the template in {@code file}; {@code attributes} are the file's as read before, and tell
+     * whether the file has changed since.
+     */
+    static CompiledTemplate compile(Path file, BasicFileAttributes attributes) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        List<RawZip.Entry> entries = RawZip.entries(content);
+        try (XWPFDocument template = new XWPFDocument(new ByteArrayInputStream(content))) {
+            // the paragraphs WordDocumentService has always filled: body paragraphs, then those of table cells
+            List<XWPFParagraph> paragraphs = new ArrayList<>(template.getParagraphs());
+            for (XWPFTable table : template.getTables()) {
+                for (XWPFTableRow row : table.getRows()) {
+                    for (XWPFTableCell cell : row.getTableCells()) {
+                        paragraphs.addAll(cell.getParagraphs());
+                    }
+                }
+            }
+            Map<CTP, Slot> slotsByParagraph = new IdentityHashMap<>();
+            for (XWPFParagraph paragraph : paragraphs) {
+                Slot slot = Slot.of(paragraph);
+                if (slot != null) {
+                    for (int i = paragraph.getRuns().size() - 1; i >= 0; i--) {
+                        paragraph.removeRun(i);
+                    }
+                    paragraph.createRun();
+                    slotsByParagraph.put(paragraph.getCTP(), slot);
+                }
+            }
+            CTDocument1 document = template.getDocument();
+            XmlObject[] all = document.selectPath(ALL_PARAGRAPHS);
+            List<Slot> slots = new ArrayList<>(slotsByParagraph.size());
+            for (int i = 0; i < all.length; i++) {
+                Slot slot = slotsByParagraph.get(all[i]);
+                if (slot != null) {
+                    slot.index = i;
+                    slots.add(slot);
+                }
+            }
+            if (slots.size() != slotsByParagraph.size()) {
+                throw new IOException("Could not locate every placeholder paragraph in template " + file);
+            }
+            String documentPartName = template.getPackagePart().getPartName().getName().substring(1);
+            if (entries.stream().noneMatch(entry -> entry.name.equals(documentPartName))) {
+                throw new IOException("Template " + file + " has no ZIP entry " + documentPartName);
+            }
+            return new CompiledTemplate(attributes, DocumentFingerprint.ofContent(content), entries,
+                    documentPartName, (CTDocument1) document.copy(), Collections.unmodifiableList(slots));
+        } catch (RuntimeException e) {
+            // POI reports a file that is not a Word document with unchecked exceptions
+            throw new IOException("Template " + file + " is not a valid Word document: " + e.getMessage(), e);
+        }
+    }
+
+    /** Whether this was compiled from the file as it is now. */
+    boolean isCompiledFrom(BasicFileAttributes attributes) {
+        return Objects.equals(fileKey, attributes.fileKey())
+                && lastModified == attributes.lastModifiedTime().toMillis()
+                && size == attributes.size();
+    }
+
+    /** SHA-256 of the template file, see {@link WordDocumentService#templateFingerprint()}. */
+    String fingerprint() {
+        return fingerprint;
+    }
+
+    /** Number of paragraphs with placeholders. */
+    int slotCount() {
+        return slots.size();
+    }
+
+    /**
+     * Renders a document from the byte segments, taking the replacement for every placeholder name from
+     * {@code values}.
+     */
+    byte[] render(Function<String, String> values) throws IOException {
+        return writePackage(out -> {
+            for (int i = 0; i < slots.size(); i++) {
+                out.write(segments[i]);
+                Slot slot = slots.get(i);
+                String text = slot.fill(values);
+                if (text.equals(slot.originalText)) {
+                    out.write(slot.originalXml);
+                    continue;
+                }
+                out.write(slot.head);
+                if (text.isEmpty()) {
+                    out.write(emptyText);
+                } else {
+                    out.write(needsPreserve(text) ? textStartPreserve : textStart);
+                    out.write(escape(text).getBytes(StandardCharsets.UTF_8));
+                    out.write(textEnd);
+                }
+                out.write(slot.tail);
+            }
+            out.write(segments[slots.size()]);
+        });
+    }
+
+    /** Renders a document like {@link #render}, through a copy of the prepared XML objects. */
+    byte[] renderXml(Function<String, String> values) throws IOException {
+        CTDocument1 copy = (CTDocument1) document.copy();
+        XmlObject[] paragraphs = copy.selectPath(ALL_PARAGRAPHS);
+        for (Slot slot : slots) {
+            CTP paragraph = (CTP) paragraphs[slot.index];
+            String text = slot.fill(values);
+            if (text.equals(slot.originalText)) {
+                // nothing replaced: the paragraph keeps its runs and formatting
+                paragraph.set(slot.original);
+            } else {
+                setText(paragraph.getRArray(paragraph.sizeOfRArray() - 1).addNewT(), text);
+            }
+        }
+        return writePackage(out -> copy.save(out, SAVE_OPTIONS));
+    }
+
+    // only the main document is deflated; every other part is copied with its compressed bytes and CRC
+    private byte[] writePackage(RawZip.Content document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(packageSize + 64 * 1024);
+        RawZip.Writer zip = new RawZip.Writer(out);
+        for (RawZip.Entry entry : entries) {
+            zip.add(entry.name.equals(documentPartName) ? RawZip.deflate(entry, document) : entry);
+        }
+        zip.finish();
+        return out.toByteArray();
+    }
+
+    // the serialized document cut at the slot boundaries: segment, slot paragraph, segment, ..., segment
+    private static String[] split(CTDocument1 document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        document.save(out, SAVE_OPTIONS);
+        return out.toString(StandardCharsets.UTF_8).split(Pattern.quote(SLOT_BOUNDARY), -1);
+    }
+
+    /**
+     * Escapes text the way XMLBeans saves it: {@code &}, {@code <}, {@code >} after {@code ]]} and carriage
+     * returns as references, and characters XML cannot hold as {@code ?}.
+     */
+    static String escape(String text) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement;
+            if (c == '&') {
+                replacement = "&amp;";
+            } else if (c == '<') {
+                replacement = "&lt;";
+            } else if (c == '>' && i >= 2 && text.charAt(i - 1) == ']' && text.charAt(i - 2) == ']') {
+                replacement = "&gt;";
+            } else if (c == '\r') {
+                replacement = "&#13;";
+            } else if (!isXmlChar(text, i)) {
+                replacement = "?";
+            } else if (Character.isHighSurrogate(c)) {
+                // a valid pair: keep both halves
+                if (escaped != null) {
+                    escaped.append(c).append(text.charAt(i + 1));
+                }
+                i++;
+                continue;
+            } else {
+                if (escaped != null) {
+                    escaped.append(c);
+                }
+                continue;
+            }
+            if (escaped == null) {
+                escaped = new StringBuilder(text.length() + 16).append(text, 0, i);
+            }
+            escaped.append(replacement);
+        }
+        return escaped != null ? escaped.toString() : text;
+    }
+
+    private static boolean isXmlChar(String text, int i) {
+        char c = text.charAt(i);
+        if (c < 0x20) {
+            return c == '\t' || c == '\n' || c == '\r';
+        }
+        if (Character.isHighSurrogate(c)) {
+            return i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1));
+        }
+        return !Character.isLowSurrogate(c) && c != 0xFFFE && c != 0xFFFF;
+    }
+
+    private static boolean needsPreserve(String text) {
+        return !text.isEmpty() && (Character.isWhitespace(text.charAt(0))
+                || Character.isWhitespace(text.charAt(text.length() - 1)));
+    }
+
+    // what XWPFRun.setText does: leading or trailing whitespace needs xml:space="preserve"
+    private static void setText(CTText t, String text) {
+        t.setStringValue(text);
+        if (needsPreserve(text)) {
+            try (XmlCursor cursor = t.newCursor()) {
+                cursor.toNextToken();
+                cursor.insertAttributeWithValue(XML_SPACE, "preserve");
+            }
+        }
+    }
+
+    /** A paragraph with placeholders: alternating literal text and placeholder names, literal first. */
+    private static final class Slot {
+        private final List<String> pieces;
+        private final String originalText;
+        private final CTP original;
+        // position among all paragraphs of the document
+        private int index;
+        // the serialized paragraph before and after the text of its run, and as it is in the template
+        private byte[] head;
+        private byte[] tail;
+        private byte[] originalXml;
+
+        private Slot(List<String> pieces, String originalText, CTP original) {
+            this.pieces = pieces;
+            this.originalText = originalText;
+            this.original = original;
+        }
+
+        static Slot of(XWPFParagraph paragraph) {
+            String text = paragraph.getText();
+            if (text == null || !text.contains("{{")) {
+                return null;
+            }
+            Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
+            List<String> pieces = new ArrayList<>();
+            int end = 0;
+            while (matcher.find()) {
+                pieces.add(text.substring(end, matcher.start()));
+                pieces.add(matcher.group(1).trim());
+                end = matcher.end();
+            }
+            if (pieces.isEmpty()) {
+                return null;
+            }
+            pieces.add(text.substring(end));
+            return new Slot(pieces, text, (CTP) paragraph.getCTP().copy());
+        }
+
+        String fill(Function<String, String> values) {
+            StringBuilder text = new StringBuilder(originalText.length() + 64);
+            for (int i = 0; i < pieces.size(); i++) {
+                text.append(i % 2 == 0 ? pieces.get(i) : values.apply(pieces.get(i)));
+            }
+            return text.toString();
+        }
+    }
+}
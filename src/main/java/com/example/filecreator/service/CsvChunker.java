@@ -0,0 +1,124 @@
+package com.example.filecreator.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a CSV file into byte ranges that each start and end on a record boundary, so the ranges can be
+ * parsed independently. The scan follows the same quoting rules as {@code CSVFormat.DEFAULT}: a quote only
+ * opens a quoted field when it is the first character of the field, {@code ""} inside a quoted field is an
+ * escaped quote, and line breaks inside quoted fields do not end the record. Ranges always end just after
+ * a {@code '\n'}, so a {@code "\r\n"} pair or a multi-byte UTF-8 character is never split.
+ */
+final class CsvChunker {
+
+    private static final int SCAN_BUFFER_BYTES = 1 << 20;
+
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    /** A half-open byte range {@code [start, end)} of whole records. */
+    static final class Chunk {
+        final long start;
+        final long end;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start;
+        }
+    }
+
+    private CsvChunker() {
+    }
+
+    /**
+     * @return the header record as the first range, followed by body ranges of roughly {@code chunkBytes}
+     * each; a file without a body yields only the header range
+     */
+    static List<Chunk> split(FileChannel channel, long chunkBytes) throws IOException {
+        long size = channel.size();
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_BYTES);
+
+        int state = FIELD_START;
+        boolean recordHasContent = false;
+        long chunkStart = 0;
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) break;
+            buffer.flip();
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' && state != QUOTED) {
+                    state = FIELD_START;
+                    long recordEnd = position + i + 1;
+                    boolean header = chunks.isEmpty();
+                    if (header ? recordHasContent : recordEnd - chunkStart >= chunkBytes) {
+                        chunks.add(new Chunk(chunkStart, recordEnd));
+                        chunkStart = recordEnd;
+                    }
+                    recordHasContent = false;
+                    continue;
+                }
+                if (b != '\r') recordHasContent = true;
+                state = next(state, b);
+            }
+            position += read;
+        }
+        if (chunkStart < size || chunks.isEmpty()) {
+            chunks.add(new Chunk(chunkStart, size));
+        }
+        return chunks;
+    }
+
+    private static int next(int state, byte b) {
+        switch (state) {
+            case FIELD_START:
+                if (b == '"') return QUOTED;
+                return b == ',' ? FIELD_START : UNQUOTED;
+            case QUOTED:
+                return b == '"' ? QUOTE_IN_QUOTED : QUOTED;
+            case QUOTE_IN_QUOTED:
+                if (b == '"') return QUOTED;
+                return b == ',' ? FIELD_START : UNQUOTED;
+            case UNQUOTED:
+            default:
+                return b == ',' ? FIELD_START : UNQUOTED;
+        }
+    }
+
+    /** Reads one range with positional reads, so several ranges of the same channel can be read concurrently. */
+    static InputStream open(FileChannel channel, Chunk chunk) {
+        return new InputStream() {
+            private long position = chunk.start;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long remaining = chunk.end - position;
+                if (remaining <= 0) return -1;
+                int wanted = (int) Math.min(len, remaining);
+                int read = channel.read(ByteBuffer.wrap(b, off, wanted), position);
+                if (read > 0) position += read;
+                return read;
+            }
+        };
+    }
+}
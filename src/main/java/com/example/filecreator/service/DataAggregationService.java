@@ -2,162 +2,356 @@ package com.example.filecreator.service;
 
 import com.example.filecreator.model.AggregatedExcelRecord;
 import com.example.filecreator.model.ExcelRecord;
+import com.example.filecreator.model.ExcelRecordBatch;
+import com.example.filecreator.model.ExcelRecordView;
+import com.example.filecreator.model.StringDictionary;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 
-import java.math.BigDecimal;
-import java.util.*;
-import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.StringJoiner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
 
 @Service
 public class DataAggregationService {
 
-    public List<AggregatedExcelRecord> aggregateByImporter(List<ExcelRecord> records) {
-        Map<String, List<ExcelRecord>> groupedByImporter = records.stream()
-                .filter(record -> record.getImporterName() != null && !record.getImporterName().trim().isEmpty())
-                .collect(Collectors.groupingBy(ExcelRecord::getImporterName));
+    /** Number of worker threads for parallel aggregation; 0 means one per available processor. */
+    @Value("${filecreator.aggregation.parallelism:0}")
+    private int parallelism;
 
-        List<AggregatedExcelRecord> aggregatedRecords = new ArrayList<>();
+    /** In-memory inputs with at least this many rows are aggregated in parallel slices. */
+    @Value("${filecreator.aggregation.parallel-threshold:100000}")
+    private int parallelThreshold = 100000;
 
-        for (Map.Entry<String, List<ExcelRecord>> entry : groupedByImporter.entrySet()) {
-            String importerName = entry.getKey();
-            List<ExcelRecord> importerRecords = entry.getValue();
+    /** Estimated size of the groups a {@link SpillingAggregation} keeps in memory before spilling them to disk. */
+    @Value("${filecreator.aggregation.memory-budget:256MB}")
+    private DataSize memoryBudget = DataSize.ofMegabytes(256);
 
-            AggregatedExcelRecord aggregated = createAggregatedRecord(importerName, importerRecords);
-            aggregatedRecords.add(aggregated);
+    /** Directory for the run files of spilled aggregations. */
+    @Value("${filecreator.aggregation.spill-dir:${java.io.tmpdir}/filecreator-spill}")
+    private String spillDir = Paths.get(System.getProperty("java.io.tmpdir"), "filecreator-spill").toString();
+
+    private ForkJoinPool pool;
+
+    /**
+     * Aggregates records by importer name, importers in order of first appearance. Large random-access
+     * inputs are cut into consecutive slices that are aggregated on a fork-join pool and merged in slice
+     * order, which gives exactly the sequential result.
+     */
+    public List<AggregatedExcelRecord> aggregateByImporter(List<? extends ExcelRecordView> records) {
+        return aggregate(records, this::newAggregation, ImporterAggregation::add, ImporterAggregation::merge).result();
+    }
+
+    /**
+     * Computes all the given groupings in one pass over the records; the result lists the groups of each
+     * grouping in turn, see {@link GroupedAggregation#result()}. Large inputs are aggregated in parallel
+     * slices like in {@link #aggregateByImporter(List)}.
+     */
+    public List<AggregatedExcelRecord> aggregate(List<? extends ExcelRecordView> records, List<GroupingSpec> groupings) {
+        return aggregate(records, () -> newGroupedAggregation(groupings), GroupedAggregation::add,
+                GroupedAggregation::merge).result();
+    }
+
+    private <A> A aggregate(List<? extends ExcelRecordView> records, Supplier<A> aggregations,
+                            BiConsumer<A, ExcelRecordView> add, BinaryOperator<A> merge) {
+        int workers = workerCount();
+        if (workers <= 1 || records.isEmpty() || records.size() < parallelThreshold
+                || !(records instanceof RandomAccess)) {
+            A aggregation = aggregations.get();
+            for (ExcelRecordView record : records) {
+                add.accept(aggregation, record);
+            }
+            return aggregation;
+        }
+
+        int slices = workers * 4;
+        int sliceSize = (records.size() + slices - 1) / slices;
+        List<ForkJoinTask<A>> partials = new ArrayList<>(slices);
+        for (int start = 0; start < records.size(); start += sliceSize) {
+            List<? extends ExcelRecordView> slice = records.subList(start, Math.min(start + sliceSize, records.size()));
+            partials.add(pool().submit(() -> {
+                A partial = aggregations.get();
+                for (ExcelRecordView record : slice) {
+                    add.accept(partial, record);
+                }
+                return partial;
+            }));
         }
+        A aggregation = partials.get(0).join();
+        for (int i = 1; i < partials.size(); i++) {
+            aggregation = merge.apply(aggregation, partials.get(i).join());
+        }
+        return aggregation;
+    }
+
+    /**
+     * Starts an aggregation that takes records one at a time, e.g. straight from
+     * {@link ExcelParserService#parse(org.springframework.web.multipart.MultipartFile, RecordSink)}, and
+     * yields the same result as {@link #aggregateByImporter(List)} once the input is exhausted.
+     */
+    public ImporterAggregation newAggregation() {
+        return new ImporterAggregation();
+    }
 
-        return aggregatedRecords;
+    /** Like {@link #newAggregation()}, for the given groupings; see {@link #aggregate(List, List)}. */
+    public GroupedAggregation newGroupedAggregation(List<GroupingSpec> groupings) {
+        if (groupings.isEmpty()) {
+            throw new IllegalArgumentException("At least one grouping is required");
+        }
+        return new GroupedAggregation(groupings);
+    }
+
+    /**
+     * Starts an aggregation for inputs of any size, e.g. one-shot uploads, that spills to disk once its groups
+     * outgrow {@code filecreator.aggregation.memory-budget}. With null {@code groupings} it aggregates by
+     * importer and yields exactly what {@link #newAggregation()} would; otherwise what
+     * {@link #newGroupedAggregation(List)} would. With a non-null {@code range}, records whose BE Date is not
+     * in it are skipped.
+     */
+    public SpillingAggregation newSpillingAggregation(List<GroupingSpec> groupings, BeDateRange range) {
+        return new SpillingAggregation(this, groupings, range, memoryBudget.toBytes(), Paths.get(spillDir));
     }
 
-    private AggregatedExcelRecord createAggregatedRecord(String importerName, List<ExcelRecord> records) {
-        AggregatedExcelRecord aggregated = new AggregatedExcelRecord();
-        aggregated.setImporterName(importerName);
-
-        // Use first address found for this importer
-        aggregated.setAddress(records.stream()
-                .map(ExcelRecord::getAddress)
-                .filter(Objects::nonNull)
-                .findFirst()
-                .orElse(""));
-
-        // Aggregate unique HS codes with comma separation
-        String hsCodes = records.stream()
-                .map(ExcelRecord::getEightDigitHsCode)
-                .filter(Objects::nonNull)
-                .filter(code -> !code.trim().isEmpty())
-                .distinct()
-                .collect(Collectors.joining(", "));
-        aggregated.setAggregatedHsCodes(hsCodes);
-
-        // Aggregate CHA details (comma-separated, distinct)
-                String chaDetails = records.stream()
-                        .map(ExcelRecord::getChaDetails)
-                        .filter(Objects::nonNull)
-                        .filter(detail -> !detail.trim().isEmpty())
-                        .collect(Collectors.joining(", "));
-                aggregated.setAggregatedChaDetails(chaDetails);
-
-        // Aggregate BE numbers
-        String beNumbers = records.stream()
-                .map(ExcelRecord::getBeNumber)
-                .filter(Objects::nonNull)
-                .filter(num -> !num.trim().isEmpty())
-                .distinct()
-                .collect(Collectors.joining(", "));
-        aggregated.setAggregatedBeNumbers(beNumbers);
-
-        // Aggregate BE dates
-                String beDates = records.stream()
-                                .map(ExcelRecord::getBeDate)
-                                .filter(Objects::nonNull)
-                                .filter(date -> !date.trim().isEmpty())
-                                .map(date -> {
-                                        // If date looks like a number, try to convert from Excel numeric date
-                                        if (date.matches("\\d+")) {
-                                                try {
-                                                        int excelDate = Integer.parseInt(date);
-                                                        java.util.Date parsed = org.apache.poi.ss.usermodel.DateUtil.getJavaDate(excelDate);
-                                                        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd-MM-yyyy");
-                                                        return sdf.format(parsed);
-                                                } catch (Exception e) {
-                                                        return date;
-                                                }
-                                        }
-                                        return date;
-                                })
-                                .distinct()
-                                .collect(Collectors.joining(", "));
-                aggregated.setAggregatedBeDates(beDates);
-
-        // Aggregate descriptions
-        String descriptions = records.stream()
-                .map(ExcelRecord::getFullItemDescription)
-                .filter(Objects::nonNull)
-                .filter(desc -> !desc.trim().isEmpty())
-                .distinct()
-                .collect(Collectors.joining(", "));
-        aggregated.setAggregatedDescriptions(descriptions);
-
-        // Aggregate BCD rates
-        String bcdRates = records.stream()
-                .map(ExcelRecord::getBcdRate)
-                .filter(Objects::nonNull)
-                .filter(rate -> !rate.trim().isEmpty())
-                .distinct()
-                .collect(Collectors.joining(", "));
-        aggregated.setAggregatedBcdRates(bcdRates);
-
-        // Aggregate IGST rates
-        String igstRates = records.stream()
-                .map(ExcelRecord::getIgstRate)
-                .filter(Objects::nonNull)
-                .filter(rate -> !rate.trim().isEmpty())
-                .distinct()
-                .collect(Collectors.joining(", "));
-        aggregated.setAggregatedIgstRates(igstRates);
-
-        // Aggregate effective rates
-        String effectiveRates = records.stream()
-                .map(ExcelRecord::getEffectiveRateOfDuty)
-                .filter(Objects::nonNull)
-                .filter(rate -> !rate.trim().isEmpty())
-                .distinct()
-                .collect(Collectors.joining(", "));
-        aggregated.setAggregatedEffectiveRates(effectiveRates);
-
-        // Aggregate Sr. Nos
-        String srNos = records.stream()
-                .map(ExcelRecord::getSrNo)
-                .filter(Objects::nonNull)
-                .map(String::valueOf)
-                .collect(Collectors.joining(", "));
-        aggregated.setAggregatedSrNos(srNos);
-
-        // Sum up numerical values
-        BigDecimal totalDifferentialDuty = records.stream()
-                .map(ExcelRecord::getDifferentialDuty)
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        aggregated.setTotalDifferentialDuty(totalDifferentialDuty);
-
-        BigDecimal totalAssessableValue = records.stream()
-                .map(ExcelRecord::getAssessableValueAmount)
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        aggregated.setTotalAssessableValue(totalAssessableValue);
-
-        BigDecimal totalDutyPaid = records.stream()
-                .map(ExcelRecord::getTotalDutyPaidAmount)
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        aggregated.setTotalDutyPaid(totalDutyPaid);
-
-        BigDecimal totalDutyPayable = records.stream()
-                .map(ExcelRecord::getDutyPayable)
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        aggregated.setTotalDutyPayable(totalDutyPayable);
-
-        return aggregated;
+    /**
+     * Starts a numbers-only {@link SummaryAggregation} for {@code /api/summary}; like the other aggregations
+     * it can be fed while parsing. With a non-null {@code range}, records whose BE Date is not in it are
+     * skipped.
+     */
+    public SummaryAggregation newSummary(BeDateRange range) {
+        return new SummaryAggregation(range);
+    }
+
+    private int workerCount() {
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    private synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(workerCount());
+        }
+        return pool;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    /**
+     * Aggregates incoming records by importer name into one {@link GroupAccumulator} per importer, so
+     * every record is visited once and nothing but the running aggregates is kept; records without an
+     * importer name are dropped. Importers are looked up by their dictionary code rather than by hashing
+     * the name into a map for every record.
+     *
+     * <p>Aggregations of consecutive parts of the input can be {@link #merge merged}, so parts can be
+     * aggregated on separate threads. The result lists importers in order of first appearance, which keeps
+     * the {@code Aggregated_<n>} numbering of the generated archive stable from run to run.
+     */
+    public final class ImporterAggregation implements RecordSink {
+        private final StringDictionary importers = new StringDictionary();
+        // indexed by importer code
+        private final List<GroupAccumulator> groups = new ArrayList<>();
+        // BE date display value per raw value, shared by all importers
+        private final Map<String, String> formattedBeDates = new HashMap<>();
+
+        private ImporterAggregation() {
+        }
+
+        @Override
+        public void accept(ExcelRecord record) {
+            add(record);
+        }
+
+        /** Adds a record from any source, e.g. a row of an already parsed {@link ExcelRecordBatch}. */
+        public void add(ExcelRecordView record) {
+            if (record.getImporterName() != null && !record.getImporterName().trim().isEmpty()) {
+                int importer = importers.code(record.getImporterName());
+                if (importer == groups.size()) {
+                    groups.add(new GroupAccumulator(formattedBeDates));
+                }
+                groups.get(importer).add(record);
+            }
+        }
+
+        /**
+         * Folds in the aggregation of the records that came after this one's and returns this aggregation;
+         * importers first seen in {@code later} are appended in their order there. Merging is associative.
+         */
+        public ImporterAggregation merge(ImporterAggregation later) {
+            for (int importer = 0; importer < later.groups.size(); importer++) {
+                GroupAccumulator group = later.groups.get(importer);
+                int code = importers.code(later.importers.value(importer));
+                if (code == groups.size()) {
+                    groups.add(group);
+                } else {
+                    groups.get(code).merge(group);
+                }
+            }
+            return this;
+        }
+
+        public List<AggregatedExcelRecord> result() {
+            // Importer codes are assigned in first-seen order, so this is first-appearance order
+            List<AggregatedExcelRecord> aggregatedRecords = new ArrayList<>(groups.size());
+
+            for (GroupAccumulator importerRecords : groups) {
+                aggregatedRecords.add(importerRecords.toAggregatedRecord());
+            }
+
+            return aggregatedRecords;
+        }
+    }
+
+    /**
+     * Aggregates incoming records under several {@link GroupingSpec groupings} at once. Each grouping is a
+     * tree with one level per level of its spec: a record is added to the group of its key at the first
+     * level, to that group's child for its key at the next level, and so on, stopping at the first level
+     * where one of its keys is blank. So every record is visited once however many groupings and levels
+     * there are, and a parent group aggregates exactly the records of its children.
+     *
+     * <p>Like {@link ImporterAggregation}, aggregations of consecutive parts of the input can be
+     * {@link #merge merged} and groups are kept in order of first appearance.
+     */
+    public final class GroupedAggregation implements RecordSink {
+        private final List<GroupingSpec> groupings;
+        // one root per grouping; the roots themselves aggregate nothing
+        private final List<GroupNode> roots = new ArrayList<>();
+        private final Map<String, String> formattedBeDates = new HashMap<>();
+        private long estimatedBytes;
+
+        private GroupedAggregation(List<GroupingSpec> groupings) {
+            this.groupings = new ArrayList<>(groupings);
+            for (int i = 0; i < groupings.size(); i++) {
+                roots.add(new GroupNode(null));
+            }
+        }
+
+        @Override
+        public void accept(ExcelRecord record) {
+            add(record);
+        }
+
+        public void add(ExcelRecordView record) {
+            for (int i = 0; i < groupings.size(); i++) {
+                GroupNode node = roots.get(i);
+                for (List<GroupingKey> level : groupings.get(i).levels()) {
+                    String key = key(level, record);
+                    if (key == null) {
+                        break;
+                    }
+                    GroupNode child = node.children.get(key);
+                    if (child == null) {
+                        child = new GroupNode(new GroupAccumulator(formattedBeDates));
+                        node.children.put(key, child);
+                        estimatedBytes += GroupNode.newNodeBytes(key) + child.group.estimatedBytes();
+                    }
+                    long before = child.group.estimatedBytes();
+                    child.group.add(record);
+                    estimatedBytes += child.group.estimatedBytes() - before;
+                    node = child;
+                }
+            }
+        }
+
+        /**
+         * Folds in the aggregation of the records that came after this one's and returns this aggregation.
+         * Both must have been started with the same groupings.
+         */
+        public GroupedAggregation merge(GroupedAggregation later) {
+            for (int i = 0; i < roots.size(); i++) {
+                roots.get(i).merge(later.roots.get(i));
+            }
+            estimatedBytes += later.estimatedBytes;
+            return this;
+        }
+
+        /** Rough retained size of the groups, an overestimate once aggregations have been merged. */
+        public long estimatedBytes() {
+            return estimatedBytes;
+        }
+
+        /** Writes the groups of every grouping, to be merged back with {@link #mergeFrom(DataInput)}. */
+        void writeTo(DataOutput out) throws IOException {
+            for (GroupNode root : roots) {
+                out.writeInt(root.children.size());
+                for (Map.Entry<String, GroupNode> child : root.children.entrySet()) {
+                    SpillingAggregation.writeText(out, child.getKey());
+                    child.getValue().writeTo(out);
+                }
+            }
+        }
+
+        /**
+         * Merges in an aggregation written by {@link #writeTo(DataOutput)}, as if it covered the records that
+         * came after this one's. It must have been written with the same groupings.
+         */
+        void mergeFrom(DataInput in) throws IOException {
+            for (GroupNode root : roots) {
+                GroupNode later = new GroupNode(null);
+                for (int i = in.readInt(); i > 0; i--) {
+                    String key = SpillingAggregation.readText(in);
+                    GroupNode child = GroupNode.readFrom(in, formattedBeDates);
+                    later.children.put(key, child);
+                    estimatedBytes += GroupNode.newNodeBytes(key) + child.estimatedBytes();
+                }
+                root.merge(later);
+            }
+        }
+
+        List<GroupingSpec> groupings() {
+            return groupings;
+        }
+
+        /** The tree of each grouping, in grouping order. */
+        List<GroupNode> roots() {
+            return roots;
+        }
+
+        /**
+         * The groups of each grouping, groupings in the order they were given. Within a grouping the groups
+         * are listed depth first, each parent before its children, so {@code importer>hs2} yields an
+         * importer followed by its HS chapters, then the next importer. Every record carries its grouping
+         * and its key path, levels joined with {@code " > "} and the keys of a composite level with
+         * {@code " + "}.
+         */
+        public List<AggregatedExcelRecord> result() {
+            List<AggregatedExcelRecord> aggregatedRecords = new ArrayList<>();
+            for (int i = 0; i < groupings.size(); i++) {
+                roots.get(i).collectChildren(groupings.get(i).toString(), null, aggregatedRecords);
+            }
+            return aggregatedRecords;
+        }
+
+        private String key(List<GroupingKey> level, ExcelRecordView record) {
+            if (level.size() == 1) {
+                return level.get(0).value(record);
+            }
+            StringJoiner key = new StringJoiner(" + ");
+            for (GroupingKey part : level) {
+                String value = part.value(record);
+                if (value == null) {
+                    return null;
+                }
+                key.add(value);
+            }
+            return key.toString();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.AggregatedExcelRecord;
+import com.example.filecreator.model.ExcelRecordView;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Stable content fingerprints for incremental regeneration: two inputs with the same fingerprint render to
+ * the same document under the same template. Every field of the input is hashed, not just the ones the
+ * template currently uses, so a template edit that adds a placeholder cannot make a stale document match.
+ *
+ * <p>Fields are hashed in a fixed order as length-prefixed UTF-8 with an explicit null marker, so values
+ * cannot run into each other; numbers are hashed in their {@code toString()} form because that is what gets
+ * rendered ({@code 1.0} and {@code 1.00} are different documents). The kind of input is hashed first, so a
+ * record and an aggregated group never share a fingerprint.
+ */
+final class DocumentFingerprint {
+
+    // 128 bits of SHA-256 is plenty to tell the rows of one job apart
+    private static final int FINGERPRINT_BYTES = 16;
+
+    private final MessageDigest digest = sha256();
+
+    private DocumentFingerprint(String kind) {
+        text(kind);
+    }
+
+    static String of(ExcelRecordView record) {
+        return new DocumentFingerprint("record/2")
+                .text(record.getSrNo() != null ? record.getSrNo().toString() : null)
+                .text(record.getBeNumber())
+                .text(record.getBeDate())
+                .text(record.getIecCode())
+                .text(record.getImporterName())
+                .text(record.getAddress())
+                .text(record.getEightDigitHsCode())
+                .text(record.getFullItemDescription())
+                .decimal(record.getAssessableValueAmount())
+                .text(record.getBcdRate())
+                .text(record.getIgstRate())
+                .decimal(record.getTotalDutyPaidAmount())
+                .text(record.getEffectiveRateOfDuty())
+                .decimal(record.getDutyPayable())
+                .decimal(record.getDifferentialDuty())
+                .text(record.getChaDetails())
+                .finish();
+    }
+
+    static String of(AggregatedExcelRecord record) {
+        return new DocumentFingerprint("aggregated/2")
+                .text(record.getGrouping())
+                .text(record.getGroupKey())
+                .text(record.getImporterName())
+                .text(record.getAggregatedIecCodes())
+                .text(record.getAddress())
+                .text(record.getAggregatedHsCodes())
+                .text(record.getAggregatedBeNumbers())
+                .text(record.getAggregatedBeDates())
+                .text(record.getAggregatedDescriptions())
+                .text(record.getAggregatedBcdRates())
+                .text(record.getAggregatedIgstRates())
+                .decimal(record.getTotalDifferentialDuty())
+                .decimal(record.getTotalAssessableValue())
+                .decimal(record.getTotalDutyPaid())
+                .decimal(record.getTotalDutyPayable())
+                .text(record.getAggregatedEffectiveRates())
+                .text(record.getAggregatedSrNos())
+                .text(record.getAggregatedChaDetails())
+                .finish();
+    }
+
+    /** Full SHA-256 of a file's bytes, e.g. the template. */
+    static String ofContent(byte[] content) {
+        MessageDigest digest = sha256();
+        digest.update(content);
+        return hex(digest.digest(), digest.getDigestLength());
+    }
+
+    private DocumentFingerprint text(String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+            return this;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) 1);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+
+    private DocumentFingerprint decimal(BigDecimal value) {
+        return text(value != null ? value.toString() : null);
+    }
+
+    private String finish() {
+        return hex(digest.digest(), FINGERPRINT_BYTES);
+    }
+
+    private static String hex(byte[] bytes, int length) {
+        char[] out = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            out[2 * i] = Character.forDigit((bytes[i] >>> 4) & 0xF, 16);
+            out[2 * i + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(out);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
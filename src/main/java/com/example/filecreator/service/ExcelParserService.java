@@ -4,21 +4,33 @@ import com.example.filecreator.model.ExcelRecord;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PreDestroy;
 import java.io.*;
-import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 public class ExcelParserService {
 
+    private static final Logger log = LoggerFactory.getLogger(ExcelParserService.class);
+
     private static final String[] HEADERS = new String[]{
             "Sr. No.", "BE Number", "BE Date", "Importer Name", "ADDRESS",
             "Eight Digit HS Code", "Full Item Description", "Assessable Value Amount",
@@ -26,154 +38,420 @@ public class ExcelParserService {
             "Effective Rate of duty (BCD@35% + SWS@10% + IGST@28%)", "Duty Payable", "Differential Duty"
     };
 
+    /** Number of worker threads for parallel CSV parsing; 0 means one per available processor. */
+    @Value("${filecreator.parser.parallelism:0}")
+    private int parallelism;
+
+    /** CSV inputs at least this large are split into chunks and parsed in parallel. */
+    @Value("${filecreator.parser.csv.parallel-threshold:16MB}")
+    private DataSize parallelThreshold = DataSize.ofMegabytes(16);
+
+    /** Target size of one parallel CSV chunk. */
+    @Value("${filecreator.parser.csv.chunk-size:4MB}")
+    private DataSize chunkSize = DataSize.ofMegabytes(4);
+
+    private ForkJoinPool pool;
+
     public List<ExcelRecord> parse(MultipartFile file) throws IOException {
+        List<ExcelRecord> out = new ArrayList<>();
+        parse(file, out::add);
+        return out;
+    }
+
+    public List<ExcelRecord> parse(File file) throws IOException {
+        List<ExcelRecord> out = new ArrayList<>();
+        parse(file, out::add);
+        return out;
+    }
+
+    /**
+     * Pushes every record of the upload to {@code sink} in file order as soon as it is read, without
+     * collecting the rows into a list first. Low-cardinality text columns are dictionary-encoded on the way
+     * (see {@link IngestDictionary}), so equal values share one String instance.
+     */
+    public void parse(MultipartFile file, RecordSink sink) throws IOException {
+        RecordSink encoded = new IngestDictionary().encoding(sink);
         String filename = file.getOriginalFilename();
-        if (filename != null && (filename.toLowerCase().endsWith(".xlsx") || filename.toLowerCase().endsWith(".xls"))) {
-            return parseXlsx(file.getInputStream());
+        String lower = filename != null ? filename.toLowerCase() : "";
+        if (lower.endsWith(".xlsx") || lower.endsWith(".xls")) {
+            // The streaming readers need random access to the zip package or POIFS container, so spool the upload first
+            boolean xlsx = lower.endsWith(".xlsx");
+            Path spooled = spoolToTempFile(file, xlsx ? ".xlsx" : ".xls");
+            try {
+                if (xlsx) {
+                    parseXlsx(spooled.toFile(), encoded);
+                } else {
+                    parseXls(spooled.toFile(), encoded);
+                }
+            } finally {
+                Files.deleteIfExists(spooled);
+            }
+            return;
+        }
+        if (useParallelCsv(file.getSize())) {
+            // Chunking needs random access as well, so large CSV uploads are spooled and split
+            Path spooled = spoolToTempFile(file, ".csv");
+            try {
+                parseCsvParallel(spooled, encoded);
+            } finally {
+                Files.deleteIfExists(spooled);
+            }
+            return;
         }
         // fallback to CSV
-        return parseCsv(file.getInputStream());
+        parseCsv(file.getInputStream(), encoded);
     }
 
-    public List<ExcelRecord> parse(File file) throws IOException {
+    /** File-based counterpart of {@link #parse(MultipartFile, RecordSink)}. */
+    public void parse(File file, RecordSink sink) throws IOException {
+        RecordSink encoded = new IngestDictionary().encoding(sink);
         String name = file.getName().toLowerCase();
-        if (name.endsWith(".xlsx") || name.endsWith(".xls")) {
-            try (FileInputStream fis = new FileInputStream(file)) {
-                return parseXlsx(fis);
-            }
+        if (name.endsWith(".xlsx")) {
+            parseXlsx(file, encoded);
+        } else if (name.endsWith(".xls")) {
+            parseXls(file, encoded);
+        } else if (useParallelCsv(file.length())) {
+            parseCsvParallel(file.toPath(), encoded);
         } else {
-            try (FileInputStream fis = new FileInputStream(file)) {
-                return parseCsv(fis);
-            }
+            parseCsvMapped(file.toPath(), encoded);
         }
     }
 
-    private List<ExcelRecord> parseCsv(InputStream is) throws IOException {
-        List<ExcelRecord> out = new ArrayList<>();
-        try (Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
-            CSVParser parser = CSVFormat.DEFAULT
+    /**
+     * Parses the file into partial results that are combined in file order, e.g. to aggregate while parsing
+     * with {@code DataAggregationService::newAggregation} and {@code ImporterAggregation::merge}. Large CSV
+     * files are parsed chunk by chunk on the worker pool, each chunk into its own partial on the worker
+     * thread, so the sink work runs in parallel as well; any other input fills a single partial.
+     * {@code combiner} must be associative; it is always called on the calling thread.
+     */
+    public <A extends RecordSink> A parse(File file, Supplier<A> partials, ChunkCombiner<A> combiner) throws IOException {
+        String name = file.getName().toLowerCase();
+        if (!name.endsWith(".xlsx") && !name.endsWith(".xls") && useParallelCsv(file.length())) {
+            return parseCsvParallel(file.toPath(), partials,
+                    partial -> new IngestDictionary().encoding(partial), combiner);
+        }
+        A partial = partials.get();
+        parse(file, partial);
+        return partial;
+    }
+
+    private Path spoolToTempFile(MultipartFile file, String suffix) throws IOException {
+        Path temp = Files.createTempFile("upload-", suffix);
+        try (InputStream in = file.getInputStream()) {
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    private static CSVFormat csvFormat() {
+        return CSVFormat.DEFAULT
+                .withIgnoreEmptyLines()
+                .withTrim();
+    }
+
+    private void parseCsv(InputStream is, RecordSink sink) throws IOException {
+        try (Reader reader = new InputStreamReader(skipUtf8Bom(is), StandardCharsets.UTF_8)) {
+            CSVParser parser = csvFormat()
                     .withFirstRecordAsHeader()
-                    .withIgnoreEmptyLines()
-                    .withTrim()
                     .parse(reader);
 
-            Map<String, Integer> headerMap = parser.getHeaderMap();
+            RecordAssembler assembler = new RecordAssembler(ColumnBinding.resolve(csvHeaders(parser.getHeaderMap())));
             for (CSVRecord rec : parser) {
-                ExcelRecord r = mapRecord(rec.toMap());
-                out.add(r);
+                sink.accept(assembler.fromCsv(rec));
             }
+            reportInvalidCells("CSV", assembler.decoder());
         }
-        return out;
     }
 
-    private List<ExcelRecord> parseXlsx(InputStream is) throws IOException {
-        List<ExcelRecord> out = new ArrayList<>();
-        try (XSSFWorkbook workbook = new XSSFWorkbook(is)) {
-            XSSFSheet sheet = workbook.getSheetAt(0);
-            Iterator<Row> rows = sheet.iterator();
-            if (!rows.hasNext()) return out;
-            // header
-            Row header = rows.next();
-            List<String> headers = new ArrayList<>();
-            for (Cell c : header) headers.add(getCellString(c));
-
-            while (rows.hasNext()) {
-                Row row = rows.next();
-                Map<String, String> map = new LinkedHashMap<>();
-                for (int i = 0; i < headers.size(); i++) {
-                    Cell c = row.getCell(i);
-                        String key = headers.get(i);
-                        String value = getCellString(c);
-                        if (key != null) key = key.trim();
-                        if (value != null) value = value.trim();
-                        map.put(key, value);
-                }
-                ExcelRecord r = mapRecord(map);
-                out.add(r);
-            }
+    /** Drops a leading UTF-8 byte order mark, which Excel writes and which would otherwise stick to the first header. */
+    private static InputStream skipUtf8Bom(InputStream is) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(is, 3);
+        byte[] head = new byte[3];
+        int read = in.readNBytes(head, 0, 3);
+        boolean bom = read == 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF;
+        if (!bom && read > 0) in.unread(head, 0, read);
+        return in;
+    }
+
+    private static List<String> csvHeaders(Map<String, Integer> headerMap) {
+        List<String> headers = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : headerMap.entrySet()) {
+            int column = entry.getValue();
+            while (headers.size() <= column) headers.add(null);
+            headers.set(column, entry.getKey());
         }
-        return out;
+        return headers;
+    }
+
+    private boolean useParallelCsv(long size) {
+        return workerCount() > 1 && size >= parallelThreshold.toBytes();
     }
 
-    private String getCellString(Cell c) {
-        if (c == null) return null;
-        switch (c.getCellType()) {
-            case STRING:
-                return c.getStringCellValue();
-            case NUMERIC:
-                // return numeric as plain string without scientific notation
-                return BigDecimal.valueOf(c.getNumericCellValue()).stripTrailingZeros().toPlainString();
-            case BOOLEAN:
-                return Boolean.toString(c.getBooleanCellValue());
-            case FORMULA:
-                try {
-                    return c.getStringCellValue();
-                } catch (Exception e) {
-                    return BigDecimal.valueOf(c.getNumericCellValue()).toPlainString();
+    private int workerCount() {
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    private synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(workerCount());
+        }
+        return pool;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    /**
+     * Splits the file at record boundaries and parses the chunks on a fork-join pool. At most two chunks
+     * per worker are in flight; their records are handed to the sink strictly in chunk order, so it sees
+     * the same records, in the same order, as with the sequential parse.
+     */
+    private void parseCsvParallel(Path path, RecordSink sink) throws IOException {
+        parseCsvParallel(path, ChunkRecords::new, chunk -> chunk, (none, chunk) -> {
+            // every chunk is forwarded as it comes; the merged partial is never filled
+            chunk.forwardTo(sink);
+            return none;
+        });
+    }
+
+    /**
+     * Parses every chunk into a fresh partial on the worker pool (through {@code chunkSink}, which may wrap
+     * it) and folds the partials into an initially empty one with {@code combiner}, strictly in chunk order.
+     */
+    private <A extends RecordSink> A parseCsvParallel(Path path, Supplier<A> partials, Function<A, RecordSink> chunkSink,
+                                                       ChunkCombiner<A> combiner) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<CsvChunker.Chunk> chunks = CsvChunker.split(channel, chunkSize.toBytes());
+            A merged = partials.get();
+            ColumnBinding binding = readCsvHeader(channel, chunks.get(0));
+            if (binding == null) return merged;
+            CellDecoder decoder = new CellDecoder();
+
+            ForkJoinPool workers = pool();
+            int window = workerCount() * 2;
+            Deque<ForkJoinTask<ChunkResult<A>>> inFlight = new ArrayDeque<>();
+            int next = 1;
+            try {
+                while (next < chunks.size() || !inFlight.isEmpty()) {
+                    while (next < chunks.size() && inFlight.size() < window) {
+                        CsvChunker.Chunk chunk = chunks.get(next++);
+                        inFlight.addLast(workers.submit(() -> {
+                            A partial = partials.get();
+                            return new ChunkResult<>(partial, parseCsvChunk(channel, chunk, binding, chunkSink.apply(partial)));
+                        }));
+                    }
+                    ChunkResult<A> result = inFlight.removeFirst().get();
+                    merged = combiner.combine(merged, result.partial);
+                    decoder.add(result.decoder);
                 }
-            case BLANK:
-            default:
-                return "";
-        }
-    }
-
-    private ExcelRecord mapRecord(Map<String, String> row) {
-        ExcelRecord r = new ExcelRecord();
-        // Try matching by header keys; be defensive about missing keys
-        r.setSrNo(parseInteger(getFirst(row, "Sr. No.", "Sr No", "Sr. No")));
-        r.setBeNumber(getFirst(row, "BE Number", "BE Number"));
-        r.setBeDate(getFirst(row, "BE Date", "BE Date"));
-        r.setImporterName(getFirst(row, "Importer Name", "Importer Name"));
-        r.setAddress(getFirst(row, "ADDRESS", "Address"));
-        r.setEightDigitHsCode(getFirst(row, "Eight Digit HS Code", "Eight Digit HS Code"));
-        r.setFullItemDescription(getFirst(row, "Full Item Description", "Full Item Description"));
-        r.setAssessableValueAmount(parseBigDecimal(getFirst(row, "Assessable Value Amount", "Assessable Value Amount")));
-        r.setBcdRate(getFirst(row, "BCD Rate", "BCD Rate"));
-        r.setIgstRate(getFirst(row, "IGST Rate", "IGST Rate"));
-        r.setTotalDutyPaidAmount(parseBigDecimal(getFirst(row, "Total Duty Paid Amount", "Total Duty Paid Amount")));
-        r.setEffectiveRateOfDuty(getFirst(row, "Effective Rate of duty (BCD@35% + SWS@10% + IGST@28%)", "Effective Rate of duty (BCD@35% + SWS@10% + IGST@28%)"));
-        r.setDutyPayable(parseBigDecimal(getFirst(row, "Duty Payable", "Duty Payable")));
-        r.setDifferentialDuty(parseBigDecimal(getFirst(row, "Differential Duty", "Differential Duty")));
-        r.setChaDetails(getFirst(row, "CHA details", "CHA Details", "CHA", "CHA details ", " CHA details"));
-        System.out.println("Parsed CHA details: " + r.getChaDetails());
-        return r;
-    }
-
-    private String getFirst(Map<String, String> map, String... keys) {
-        for (String k : keys) {
-            if (map.containsKey(k)) {
-                String v = map.get(k);
-                return (v != null) ? v.trim() : null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while parsing CSV chunks");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException("Failed to parse CSV chunk", cause);
+            } finally {
+                for (ForkJoinTask<ChunkResult<A>> pending : inFlight) pending.cancel(true);
             }
-            // also try keys with trimmed/normalized variants
-            for (String mk : map.keySet()) {
-                if (mk != null && mk.trim().equalsIgnoreCase(k.trim())) {
-                    String v = map.get(mk);
-                    return (v != null) ? v.trim() : null;
-                }
+            reportInvalidCells("CSV", decoder);
+            return merged;
+        }
+    }
+
+    /**
+     * Tokenizes the memory-mapped file in one pass; the first record is the header and only the columns
+     * the resulting binding reads are ever decoded.
+     */
+    private void parseCsvMapped(Path path, RecordSink sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedRecordCollector collector = new MappedRecordCollector(null, sink);
+            new MappedCsvTokenizer(channel).tokenize(0, channel.size(), collector);
+            if (collector.assembler != null) {
+                reportInvalidCells("CSV", collector.assembler.decoder());
             }
         }
-        return null;
     }
 
-    private Integer parseInteger(String s) {
-        if (s == null || s.isEmpty()) return null;
+    private static ColumnBinding readCsvHeader(FileChannel channel, CsvChunker.Chunk header) throws IOException {
+        MappedRecordCollector collector = new MappedRecordCollector(null, record -> { });
+        new MappedCsvTokenizer(channel).tokenize(header.start, header.end, collector);
+        return collector.assembler != null ? collector.assembler.binding() : null;
+    }
+
+    private static CellDecoder parseCsvChunk(FileChannel channel, CsvChunker.Chunk chunk, ColumnBinding binding,
+                                             RecordSink sink) {
+        MappedRecordCollector collector = new MappedRecordCollector(binding, sink);
         try {
-            String cleaned = s.replaceAll("[^0-9-]", "");
-            return Integer.parseInt(cleaned);
-        } catch (Exception e) {
-            return null;
+            new MappedCsvTokenizer(channel).tokenize(chunk.start, chunk.end, collector);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        return collector.assembler.decoder();
     }
 
-    private BigDecimal parseBigDecimal(String s) {
-        if (s == null || s.isEmpty()) return null;
-        try {
-            String cleaned = s.replaceAll("[,%]", "").trim();
-            if (cleaned.isEmpty()) return null;
-            return new BigDecimal(cleaned);
-        } catch (Exception e) {
-            return null;
+    /**
+     * Assembles tokenized CSV records and passes them on to a sink. Without a binding the first record is
+     * taken as the header and every column is decoded once to resolve it; afterwards only bound columns
+     * are requested from the tokenizer.
+     */
+    private static class MappedRecordCollector implements MappedCsvTokenizer.RecordHandler {
+        private final RecordSink sink;
+        private final List<String> headers = new ArrayList<>();
+        private RecordAssembler assembler;
+        private ExcelRecord current;
+
+        MappedRecordCollector(ColumnBinding binding, RecordSink sink) {
+            this.assembler = binding != null ? new RecordAssembler(binding) : null;
+            this.sink = sink;
+        }
+
+        @Override
+        public boolean wants(int column) {
+            return assembler == null || assembler.binding().fieldsAt(column).length > 0;
+        }
+
+        @Override
+        public void field(int column, byte[] bytes, int length) {
+            if (assembler == null) {
+                while (headers.size() <= column) headers.add(null);
+                headers.set(column, new String(bytes, 0, length, StandardCharsets.UTF_8));
+                return;
+            }
+            if (current == null) current = new ExcelRecord();
+            assembler.utf8(current, column, bytes, length);
+        }
+
+        @Override
+        public void endRecord(int fieldCount) throws IOException {
+            if (assembler == null) {
+                assembler = new RecordAssembler(ColumnBinding.resolve(headers));
+                return;
+            }
+            ExcelRecord record = current != null ? current : new ExcelRecord();
+            current = null;
+            sink.accept(record);
+        }
+    }
+
+    private static final class ChunkResult<A> {
+        private final A partial;
+        private final CellDecoder decoder;
+
+        private ChunkResult(A partial, CellDecoder decoder) {
+            this.partial = partial;
+            this.decoder = decoder;
+        }
+    }
+
+    /** Folds a partial result into the partial of everything before it, see {@link #parse(File, Supplier, ChunkCombiner)}. */
+    @FunctionalInterface
+    public interface ChunkCombiner<A> {
+        A combine(A merged, A chunk) throws IOException;
+    }
+
+    /** The records of one chunk, buffered until it is that chunk's turn to be forwarded. */
+    private static final class ChunkRecords implements RecordSink {
+        private final List<ExcelRecord> records = new ArrayList<>();
+
+        @Override
+        public void accept(ExcelRecord record) {
+            records.add(record);
+        }
+
+        void forwardTo(RecordSink sink) throws IOException {
+            for (ExcelRecord record : records) {
+                sink.accept(record);
+            }
+        }
+    }
+
+    private void parseXlsx(File file, RecordSink sink) throws IOException {
+        SheetRowCollector collector = new SheetRowCollector(sink);
+        XlsxStreamingReader.read(file, collector);
+        if (collector.assembler != null) {
+            reportInvalidCells("XLSX", collector.assembler.decoder());
+        }
+    }
+
+    private void parseXls(File file, RecordSink sink) throws IOException {
+        SheetRowCollector collector = new SheetRowCollector(sink);
+        XlsStreamingReader.read(file, collector);
+        if (collector.assembler != null) {
+            reportInvalidCells("XLS", collector.assembler.decoder());
+        }
+    }
+
+    /**
+     * Treats the first sheet row as the header and resolves it into a {@link ColumnBinding}; every
+     * following cell is then written straight into the record of the row being read, which goes to the
+     * sink as soon as the row ends.
+     */
+    private static class SheetRowCollector implements SheetRowHandler {
+        private final RecordSink sink;
+        private final List<String> headers = new ArrayList<>();
+        private RecordAssembler assembler;
+        private ExcelRecord current;
+
+        SheetRowCollector(RecordSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            current = assembler != null ? new ExcelRecord() : null;
+        }
+
+        @Override
+        public void cell(int column, String value) {
+            if (assembler == null) {
+                while (headers.size() <= column) headers.add(null);
+                headers.set(column, value);
+                return;
+            }
+            assembler.text(current, column, value);
+        }
+
+        @Override
+        public void numericCell(int column, double value, boolean formula) {
+            if (assembler == null) {
+                cell(column, CellDecoder.numericText(value, formula));
+                return;
+            }
+            assembler.numeric(current, column, value, formula);
+        }
+
+        @Override
+        public void endRow() throws IOException {
+            if (assembler == null) {
+                assembler = new RecordAssembler(ColumnBinding.resolve(headers));
+                return;
+            }
+            ExcelRecord record = current;
+            current = null;
+            sink.accept(record);
+        }
+    }
+
+    private void reportInvalidCells(String source, CellDecoder decoder) {
+        if (decoder.totalInvalid() == 0) return;
+        StringBuilder detail = new StringBuilder();
+        for (RecordField field : RecordField.all()) {
+            int count = decoder.invalidCount(field);
+            if (count > 0) {
+                if (detail.length() > 0) detail.append(", ");
+                detail.append(field.aliases().get(0)).append('=').append(count);
+            }
         }
+        log.warn("{} parse left {} unparseable numeric cells empty ({})", source, decoder.totalInvalid(), detail);
     }
 }
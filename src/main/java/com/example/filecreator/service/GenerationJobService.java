@@ -0,0 +1,280 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.GenerationManifest;
+import com.example.filecreator.model.ManifestEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Keeps every generated archive on local disk for {@code filecreator.jobs.retention}, together with a
+ * {@link GenerationManifest} that records the fingerprint of each entry. A later generation of the same type
+ * can name such a job as its predecessor: documents whose fingerprint is unchanged are then copied from the
+ * previous archive instead of being rendered again, which is what makes re-submitting a corrected sheet with
+ * a handful of changed rows cheap.
+ *
+ * <p>A predecessor is only used if its manifest and archive still exist, it has the same type and it was
+ * rendered with the same template; otherwise everything is rendered, exactly as without a predecessor. The
+ * fingerprints are always taken from the manifest stored with the archive, a submitted manifest only names
+ * the job.
+ */
+@Service
+public class GenerationJobService {
+
+    public static final String DOCUMENTS = "documents";
+    public static final String AGGREGATED = "aggregated";
+
+    private static final Logger log = LoggerFactory.getLogger(GenerationJobService.class);
+
+    @Autowired
+    private WordDocumentService wordDocumentService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** Directory holding the archives and manifests of finished jobs. */
+    @Value("${filecreator.jobs.dir:${java.io.tmpdir}/filecreator-jobs}")
+    private String jobsDir = Paths.get(System.getProperty("java.io.tmpdir"), "filecreator-jobs").toString();
+
+    /** How long a finished job can serve as the predecessor of another one. */
+    @Value("${filecreator.jobs.retention:24h}")
+    private Duration retention = Duration.ofHours(24);
+
+    @PostConstruct
+    public void createJobsDir() throws IOException {
+        Files.createDirectories(Paths.get(jobsDir));
+    }
+
+    /**
+     * Starts a job of the given type. {@code previous} may be null; if it names a usable predecessor, the
+     * returned job offers that job's documents for reuse.
+     */
+    public Job start(String type, GenerationManifest previous) throws IOException {
+        Job job = new Job(UUID.randomUUID().toString(), type, wordDocumentService.templateFingerprint());
+        if (previous != null && previous.getJobId() != null) {
+            try {
+                job.reuseFrom(previous.getJobId());
+            } catch (IOException | RuntimeException e) {
+                job.close();
+                throw e;
+            }
+        }
+        return job;
+    }
+
+    /** Reads a manifest as returned by {@link #manifest(String)}, e.g. from an uploaded manifest file. */
+    public GenerationManifest readManifest(MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        try (InputStream in = file.getInputStream()) {
+            return objectMapper.readValue(in, GenerationManifest.class);
+        }
+    }
+
+    /** The manifest of a finished job, or null if the job is unknown or no longer retained. */
+    public GenerationManifest manifest(String jobId) throws IOException {
+        Path manifest = manifestPath(jobId);
+        if (manifest == null || !Files.exists(manifest)) {
+            return null;
+        }
+        return objectMapper.readValue(manifest.toFile(), GenerationManifest.class);
+    }
+
+    @Scheduled(fixedDelayString = "${filecreator.jobs.sweep-interval:600000}")
+    public void sweepExpired() throws IOException {
+        Instant cutoff = Instant.now().minus(retention);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(jobsDir), "job-*")) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                    delete(file);
+                }
+            }
+        }
+    }
+
+    private Path archivePath(String jobId) {
+        return isJobId(jobId) ? Paths.get(jobsDir, "job-" + jobId + ".zip") : null;
+    }
+
+    private Path manifestPath(String jobId) {
+        return isJobId(jobId) ? Paths.get(jobsDir, "job-" + jobId + ".json") : null;
+    }
+
+    // job ids come from clients and end up in file names, so only well-formed UUIDs are accepted
+    private static boolean isJobId(String jobId) {
+        try {
+            return jobId != null && UUID.fromString(jobId).toString().equals(jobId);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete job file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * One generation run. Write the archive to {@link #openArchive()}, then {@link #complete(List)} it with
+     * the entries that were written; a job closed without completing leaves nothing behind.
+     */
+    public final class Job implements ReusableDocuments, Closeable {
+        private final String id;
+        private final String type;
+        private final String templateFingerprint;
+        private final Path archive;
+        private ZipFile previousArchive;
+        private final Map<String, String> previousEntries = new HashMap<>();
+        private boolean completed;
+
+        private Job(String id, String type, String templateFingerprint) throws IOException {
+            this.id = id;
+            this.type = type;
+            this.templateFingerprint = templateFingerprint;
+            Files.createDirectories(Paths.get(jobsDir));
+            this.archive = archivePath(id);
+        }
+
+        private void reuseFrom(String previousJobId) throws IOException {
+            GenerationManifest manifest = manifest(previousJobId);
+            Path previous = archivePath(previousJobId);
+            if (manifest == null || !Files.exists(previous)) {
+                log.debug("Previous job {} is no longer available; rendering every document", previousJobId);
+                return;
+            }
+            if (!type.equals(manifest.getType()) || !templateFingerprint.equals(manifest.getTemplateFingerprint())) {
+                log.debug("Previous job {} has a different type or template; rendering every document", previousJobId);
+                return;
+            }
+            previousArchive = new ZipFile(previous.toFile());
+            for (ManifestEntry entry : manifest.getEntries()) {
+                previousEntries.putIfAbsent(entry.getFingerprint(), entry.getName());
+            }
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public Path archive() {
+            return archive;
+        }
+
+        public OutputStream openArchive() throws IOException {
+            // ZipOutputStream writes its headers a few bytes at a time
+            return new BufferedOutputStream(Files.newOutputStream(archive), 64 * 1024);
+        }
+
+        /**
+         * Like {@link #openArchive()}, but everything written also goes to {@code copy}, e.g. the response the
+         * archive is streamed to while it is generated. Closing the returned stream closes the archive file and
+         * flushes {@code copy}, which stays open.
+         */
+        public OutputStream openArchive(OutputStream copy) throws IOException {
+            return new CopyingOutputStream(openArchive(), copy);
+        }
+
+        @Override
+        public byte[] find(String fingerprint) throws IOException {
+            String name = previousEntries.get(fingerprint);
+            ZipEntry entry = name != null ? previousArchive.getEntry(name) : null;
+            if (entry == null) {
+                return null;
+            }
+            try (InputStream in = previousArchive.getInputStream(entry)) {
+                return in.readAllBytes();
+            }
+        }
+
+        /** Stores the manifest next to the finished archive, which makes the job usable as a predecessor. */
+        public GenerationManifest complete(List<ManifestEntry> entries) throws IOException {
+            GenerationManifest manifest = new GenerationManifest();
+            manifest.setJobId(id);
+            manifest.setType(type);
+            manifest.setTemplateFingerprint(templateFingerprint);
+            manifest.setCreatedAt(Instant.now());
+            manifest.setEntries(entries);
+            objectMapper.writeValue(manifestPath(id).toFile(), manifest);
+            completed = true;
+            long reused = entries.stream().filter(ManifestEntry::isReused).count();
+            log.debug("Job {} wrote {} documents, {} reused", id, entries.size(), reused);
+            return manifest;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (previousArchive != null) {
+                previousArchive.close();
+            }
+            if (!completed) {
+                delete(archive);
+            }
+        }
+    }
+
+    // writes to the archive file and a copy
+    private static final class CopyingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final OutputStream copy;
+
+        CopyingOutputStream(OutputStream out, OutputStream copy) {
+            this.out = out;
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            copy.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            copy.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            copy.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                copy.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.AggregatedExcelRecord;
+import com.example.filecreator.model.BeDate;
+import com.example.filecreator.model.ExcelRecordView;
+import com.example.filecreator.model.ExcelRecordView.Amount;
+import com.example.filecreator.model.MoneySum;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+/**
+ * Running aggregate of one group's records, e.g. one importer's. Each record is visited exactly once:
+ * distinct columns go into insertion-ordered sets, CHA details and Sr. Nos are appended as they come, and
+ * the amounts are added to fixed-point {@link MoneySum}s, so {@link #toAggregatedRecord()} only has to join what is already
+ * there.
+ *
+ * <p>The result matches what the per-column stream passes produced (see AGGREGATION_EXAMPLE.md): the
+ * distinct importer names and IEC codes (just the one name for an importer group), the first non-null
+ * address, distinct non-blank HS codes, BE numbers, BE dates, descriptions and rates in first-seen order,
+ * every non-blank CHA detail and every Sr. No. in row order, and null amounts skipped in the sums.
+ *
+ * <p>Accumulators of consecutive runs of records can be {@link #merge merged}; the merge is associative, so
+ * partial results built in parallel combine to exactly the sequential result as long as they are merged in
+ * input order.
+ */
+final class GroupAccumulator {
+
+    // the empty sets, joiners and sums; each distinct value adds a set entry plus its characters
+    private static final long BASE_BYTES = 1200;
+    private static final long ENTRY_BYTES = 80;
+
+    // formats a raw BE date for display; shared across groups so each raw value is formatted once
+    private final Function<String, String> beDateFormatter;
+
+    private final Set<String> importerNames = new LinkedHashSet<>();
+    private final Set<String> iecCodes = new LinkedHashSet<>();
+    private String address;
+    private final Set<String> hsCodes = new LinkedHashSet<>();
+    private final StringJoiner chaDetails = new StringJoiner(", ");
+    private final Set<String> beNumbers = new LinkedHashSet<>();
+    private final Set<String> beDates = new LinkedHashSet<>();
+    private final Set<String> descriptions = new LinkedHashSet<>();
+    private final Set<String> bcdRates = new LinkedHashSet<>();
+    private final Set<String> igstRates = new LinkedHashSet<>();
+    private final Set<String> effectiveRates = new LinkedHashSet<>();
+    private final StringJoiner srNos = new StringJoiner(", ");
+    private final MoneySum totalDifferentialDuty = new MoneySum();
+    private final MoneySum totalAssessableValue = new MoneySum();
+    private final MoneySum totalDutyPaid = new MoneySum();
+    private final MoneySum totalDutyPayable = new MoneySum();
+    // rough retained size, for deciding when a spilling aggregation has to go to disk
+    private long estimatedBytes = BASE_BYTES;
+
+    GroupAccumulator(Map<String, String> formattedBeDates) {
+        this.beDateFormatter = date -> formattedBeDates.computeIfAbsent(date, BeDate::display);
+    }
+
+    void add(ExcelRecordView record) {
+        addIfNotBlank(importerNames, record.getImporterName());
+        addIfNotBlank(iecCodes, record.getIecCode());
+        if (address == null) {
+            address = record.getAddress();
+        }
+        addIfNotBlank(hsCodes, record.getEightDigitHsCode());
+        if (!isBlank(record.getChaDetails())) {
+            chaDetails.add(record.getChaDetails());
+            estimatedBytes += 2L * record.getChaDetails().length() + 4;
+        }
+        addIfNotBlank(beNumbers, record.getBeNumber());
+        if (!isBlank(record.getBeDate())) {
+            // different raw values can format to the same date, so the formatted value is what is distinct
+            addIfNotBlank(beDates, beDateFormatter.apply(record.getBeDate()));
+        }
+        addIfNotBlank(descriptions, record.getFullItemDescription());
+        addIfNotBlank(bcdRates, record.getBcdRate());
+        addIfNotBlank(igstRates, record.getIgstRate());
+        addIfNotBlank(effectiveRates, record.getEffectiveRateOfDuty());
+        if (record.getSrNo() != null) {
+            srNos.add(String.valueOf(record.getSrNo()));
+            estimatedBytes += 24;
+        }
+        record.addAmount(Amount.DIFFERENTIAL_DUTY, totalDifferentialDuty);
+        record.addAmount(Amount.ASSESSABLE_VALUE, totalAssessableValue);
+        record.addAmount(Amount.TOTAL_DUTY_PAID, totalDutyPaid);
+        record.addAmount(Amount.DUTY_PAYABLE, totalDutyPayable);
+    }
+
+    /** Folds in the accumulator of records that came after this one's; {@code later} itself is not changed. */
+    void merge(GroupAccumulator later) {
+        importerNames.addAll(later.importerNames);
+        iecCodes.addAll(later.iecCodes);
+        if (address == null) {
+            address = later.address;
+        }
+        hsCodes.addAll(later.hsCodes);
+        chaDetails.merge(later.chaDetails);
+        beNumbers.addAll(later.beNumbers);
+        beDates.addAll(later.beDates);
+        descriptions.addAll(later.descriptions);
+        bcdRates.addAll(later.bcdRates);
+        igstRates.addAll(later.igstRates);
+        effectiveRates.addAll(later.effectiveRates);
+        srNos.merge(later.srNos);
+        totalDifferentialDuty.add(later.totalDifferentialDuty);
+        totalAssessableValue.add(later.totalAssessableValue);
+        totalDutyPaid.add(later.totalDutyPaid);
+        totalDutyPayable.add(later.totalDutyPayable);
+        estimatedBytes += later.estimatedBytes;
+    }
+
+    long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /** Writes the full state, to be restored with {@link #readFrom(DataInput, Map)}. */
+    void writeTo(DataOutput out) throws IOException {
+        writeSet(out, importerNames);
+        writeSet(out, iecCodes);
+        SpillingAggregation.writeText(out, address);
+        writeSet(out, hsCodes);
+        SpillingAggregation.writeText(out, chaDetails.toString());
+        writeSet(out, beNumbers);
+        writeSet(out, beDates);
+        writeSet(out, descriptions);
+        writeSet(out, bcdRates);
+        writeSet(out, igstRates);
+        writeSet(out, effectiveRates);
+        SpillingAggregation.writeText(out, srNos.toString());
+        totalDifferentialDuty.writeTo(out);
+        totalAssessableValue.writeTo(out);
+        totalDutyPaid.writeTo(out);
+        totalDutyPayable.writeTo(out);
+    }
+
+    static GroupAccumulator readFrom(DataInput in, Map<String, String> formattedBeDates) throws IOException {
+        GroupAccumulator group = new GroupAccumulator(formattedBeDates);
+        group.readSet(in, group.importerNames);
+        group.readSet(in, group.iecCodes);
+        group.address = SpillingAggregation.readText(in);
+        group.readSet(in, group.hsCodes);
+        group.readJoined(in, group.chaDetails);
+        group.readSet(in, group.beNumbers);
+        group.readSet(in, group.beDates);
+        group.readSet(in, group.descriptions);
+        group.readSet(in, group.bcdRates);
+        group.readSet(in, group.igstRates);
+        group.readSet(in, group.effectiveRates);
+        group.readJoined(in, group.srNos);
+        group.totalDifferentialDuty.readFrom(in);
+        group.totalAssessableValue.readFrom(in);
+        group.totalDutyPaid.readFrom(in);
+        group.totalDutyPayable.readFrom(in);
+        return group;
+    }
+
+    AggregatedExcelRecord toAggregatedRecord() {
+        AggregatedExcelRecord aggregated = new AggregatedExcelRecord();
+        aggregated.setImporterName(String.join(", ", importerNames));
+        aggregated.setAggregatedIecCodes(String.join(", ", iecCodes));
+        aggregated.setAddress(address != null ? address : "");
+        aggregated.setAggregatedHsCodes(String.join(", ", hsCodes));
+        aggregated.setAggregatedChaDetails(chaDetails.toString());
+        aggregated.setAggregatedBeNumbers(String.join(", ", beNumbers));
+        aggregated.setAggregatedBeDates(String.join(", ", beDates));
+        aggregated.setAggregatedDescriptions(String.join(", ", descriptions));
+        aggregated.setAggregatedBcdRates(String.join(", ", bcdRates));
+        aggregated.setAggregatedIgstRates(String.join(", ", igstRates));
+        aggregated.setAggregatedEffectiveRates(String.join(", ", effectiveRates));
+        aggregated.setAggregatedSrNos(srNos.toString());
+        aggregated.setTotalDifferentialDuty(totalDifferentialDuty.toBigDecimal());
+        aggregated.setTotalAssessableValue(totalAssessableValue.toBigDecimal());
+        aggregated.setTotalDutyPaid(totalDutyPaid.toBigDecimal());
+        aggregated.setTotalDutyPayable(totalDutyPayable.toBigDecimal());
+        return aggregated;
+    }
+
+    private void addIfNotBlank(Set<String> values, String value) {
+        if (!isBlank(value) && values.add(value)) {
+            estimatedBytes += ENTRY_BYTES + 2L * value.length();
+        }
+    }
+
+    private static void writeSet(DataOutput out, Set<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            SpillingAggregation.writeText(out, value);
+        }
+    }
+
+    private void readSet(DataInput in, Set<String> values) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            String value = SpillingAggregation.readText(in);
+            values.add(value);
+            estimatedBytes += ENTRY_BYTES + 2L * value.length();
+        }
+    }
+
+    // a joiner's elements are never empty, so an empty string means no elements
+    private void readJoined(DataInput in, StringJoiner joiner) throws IOException {
+        String joined = SpillingAggregation.readText(in);
+        if (!joined.isEmpty()) {
+            joiner.add(joined);
+            estimatedBytes += 2L * joined.length();
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.AggregatedExcelRecord;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A group of a grouping tree, see {@link DataAggregationService.GroupedAggregation}, with its child groups
+ * at the next level in order of first appearance. The root of a tree aggregates nothing.
+ */
+final class GroupNode {
+
+    // a node and its map entry, on top of the accumulator
+    private static final long NODE_BYTES = 120;
+
+    final GroupAccumulator group;
+    final Map<String, GroupNode> children = new LinkedHashMap<>();
+
+    GroupNode(GroupAccumulator group) {
+        this.group = group;
+    }
+
+    // later's groups are folded into ours or, if new, appended after them
+    void merge(GroupNode later) {
+        if (group != null) {
+            group.merge(later.group);
+        }
+        for (Map.Entry<String, GroupNode> child : later.children.entrySet()) {
+            GroupNode existing = children.get(child.getKey());
+            if (existing == null) {
+                children.put(child.getKey(), child.getValue());
+            } else {
+                existing.merge(child.getValue());
+            }
+        }
+    }
+
+    /** Adds this group's record followed by those of its descendants, depth first. */
+    void collect(String grouping, String key, List<AggregatedExcelRecord> out) {
+        AggregatedExcelRecord aggregated = group.toAggregatedRecord();
+        aggregated.setGrouping(grouping);
+        aggregated.setGroupKey(key);
+        out.add(aggregated);
+        collectChildren(grouping, key, out);
+    }
+
+    /** Like {@link #collect}, for the descendants only; {@code path} is null at the root. */
+    void collectChildren(String grouping, String path, List<AggregatedExcelRecord> out) {
+        for (Map.Entry<String, GroupNode> child : children.entrySet()) {
+            child.getValue().collect(grouping, path == null ? child.getKey() : path + " > " + child.getKey(), out);
+        }
+    }
+
+    static long newNodeBytes(String key) {
+        return NODE_BYTES + 2L * key.length();
+    }
+
+    /** Rough retained size of this (non-root) node's group and its descendants, see {@link #newNodeBytes}. */
+    long estimatedBytes() {
+        long bytes = group.estimatedBytes();
+        for (Map.Entry<String, GroupNode> child : children.entrySet()) {
+            bytes += newNodeBytes(child.getKey()) + child.getValue().estimatedBytes();
+        }
+        return bytes;
+    }
+
+    /** Writes this (non-root) node and its descendants, to be restored with {@link #readFrom}. */
+    void writeTo(DataOutput out) throws IOException {
+        group.writeTo(out);
+        out.writeInt(children.size());
+        for (Map.Entry<String, GroupNode> child : children.entrySet()) {
+            SpillingAggregation.writeText(out, child.getKey());
+            child.getValue().writeTo(out);
+        }
+    }
+
+    static GroupNode readFrom(DataInput in, Map<String, String> formattedBeDates) throws IOException {
+        GroupNode node = new GroupNode(GroupAccumulator.readFrom(in, formattedBeDates));
+        for (int i = in.readInt(); i > 0; i--) {
+            String key = SpillingAggregation.readText(in);
+            node.children.put(key, readFrom(in, formattedBeDates));
+        }
+        return node;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.BeDate;
+import com.example.filecreator.model.ExcelRecordView;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * A record attribute aggregated documents can be grouped by, with the names it is written as in a
+ * {@link GroupingSpec}. A blank value means the record has no group for this key.
+ */
+public enum GroupingKey {
+    IMPORTER(ExcelRecordView::getImporterName, "importer", "importer-name"),
+    BE_NUMBER(ExcelRecordView::getBeNumber, "be-number", "be"),
+    CHA(ExcelRecordView::getChaDetails, "cha", "cha-details"),
+    IEC_CODE(ExcelRecordView::getIecCode, "iec", "iec-code"),
+    HS_CHAPTER_2(record -> hsPrefix(record, 2), "hs2", "hs-chapter-2"),
+    HS_CHAPTER_4(record -> hsPrefix(record, 4), "hs4", "hs-chapter-4"),
+    BE_MONTH(record -> beDateBucket(record, BeDate::month), "month", "be-month"),
+    BE_QUARTER(record -> beDateBucket(record, BeDate::quarter), "quarter", "be-quarter");
+
+    private final Function<ExcelRecordView, String> extractor;
+    private final List<String> names;
+
+    GroupingKey(Function<ExcelRecordView, String> extractor, String... names) {
+        this.extractor = extractor;
+        this.names = Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /** The record's value for this key, or null if it is blank. */
+    String value(ExcelRecordView record) {
+        String value = extractor.apply(record);
+        return value == null || value.trim().isEmpty() ? null : value;
+    }
+
+    /** Canonical name, as used in {@link GroupingSpec#toString()}. */
+    public String specName() {
+        return names.get(0);
+    }
+
+    static GroupingKey fromSpecName(String name) {
+        String normalized = name.trim().toLowerCase();
+        for (GroupingKey key : values()) {
+            if (key.names.contains(normalized)) {
+                return key;
+            }
+        }
+        throw new IllegalArgumentException("Unknown grouping key '" + name.trim() + "'; expected one of "
+                + Arrays.toString(Arrays.stream(values()).map(GroupingKey::specName).toArray()));
+    }
+
+    // HS chapter and heading are the leading 2 and 4 digits of the HS code
+    private static String hsPrefix(ExcelRecordView record, int digits) {
+        String code = record.getEightDigitHsCode();
+        if (code == null) {
+            return null;
+        }
+        code = code.trim();
+        return code.length() >= digits ? code.substring(0, digits) : null;
+    }
+
+    // month and quarter come from the BE Date parsed at ingest; records without a recognised date have none
+    private static String beDateBucket(ExcelRecordView record, IntFunction<String> bucket) {
+        int day = record.beEpochDay();
+        return day != BeDate.NONE ? bucket.apply(day) : null;
+    }
+}
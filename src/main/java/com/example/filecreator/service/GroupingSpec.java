@@ -0,0 +1,79 @@
+package com.example.filecreator.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * How aggregated documents are grouped: one or more levels, each a single {@link GroupingKey} or a
+ * composite of several. Written as text, keys within a level are joined with {@code +} and levels with
+ * {@code >}:
+ * <ul>
+ *     <li>{@code importer} – one group per importer (the classic aggregation),</li>
+ *     <li>{@code importer+cha} – one group per importer and CHA combination,</li>
+ *     <li>{@code importer>hs2} – a group per importer, each followed by a group per HS chapter within it.</li>
+ * </ul>
+ * A hierarchy yields a group at every level, so the parent groups are the subtotals of their children.
+ */
+public final class GroupingSpec {
+
+    public static final GroupingSpec IMPORTER = parse("importer");
+
+    private final List<List<GroupingKey>> levels;
+
+    private GroupingSpec(List<List<GroupingKey>> levels) {
+        this.levels = levels;
+    }
+
+    /** Parses the text form; throws {@link IllegalArgumentException} for an empty spec or an unknown key. */
+    public static GroupingSpec parse(String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            throw new IllegalArgumentException("Grouping spec must not be empty");
+        }
+        List<List<GroupingKey>> levels = new ArrayList<>();
+        for (String level : spec.split(">", -1)) {
+            List<GroupingKey> keys = new ArrayList<>();
+            for (String key : level.split("\\+", -1)) {
+                if (key.trim().isEmpty()) {
+                    throw new IllegalArgumentException("Empty grouping key in '" + spec + "'");
+                }
+                keys.add(GroupingKey.fromSpecName(key));
+            }
+            levels.add(Collections.unmodifiableList(keys));
+        }
+        return new GroupingSpec(Collections.unmodifiableList(levels));
+    }
+
+    public List<List<GroupingKey>> levels() {
+        return levels;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof GroupingSpec && levels.equals(((GroupingSpec) o).levels);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(levels);
+    }
+
+    /** The canonical text form, e.g. {@code importer>hs2}. */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (List<GroupingKey> level : levels) {
+            if (text.length() > 0) {
+                text.append('>');
+            }
+            for (int i = 0; i < level.size(); i++) {
+                if (i > 0) {
+                    text.append('+');
+                }
+                text.append(level.get(i).specName());
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.filecreator.service;
+
+/**
+ * HyperLogLog sketch for approximate distinct counts in constant memory: 2<sup>{@value #PRECISION}</sup>
+ * one-byte registers (16 KB) whatever the number of values, for a standard error of about 0.8%; small
+ * counts come out close to exact. Sketches of parts of the input can be {@link #merge merged} in any order.
+ * Not thread-safe.
+ */
+final class HyperLogLog {
+
+    static final int PRECISION = 14;
+    private static final int REGISTERS = 1 << PRECISION;
+    // largest register value: the guard bit caps the rank at 64 - PRECISION + 1
+    private static final int MAX_RANK = 64 - PRECISION + 1;
+    private static final double ALPHA_INFINITY = 1 / (2 * Math.log(2));
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /** Adds a value; null and blank values are not counted. */
+    void add(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        // position of the first 1 bit in the remaining bits
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Ertl's improved estimator ("New cardinality estimation algorithms for HyperLogLog sketches", 2017),
+     * which needs neither the linear-counting switch nor bias tables of the classic estimator and is
+     * unbiased across the whole range.
+     */
+    long estimate() {
+        int[] counts = new int[MAX_RANK + 1];
+        for (byte register : registers) {
+            counts[register]++;
+        }
+        double z = REGISTERS * tau(1 - (double) counts[MAX_RANK] / REGISTERS);
+        for (int rank = MAX_RANK - 1; rank >= 1; rank--) {
+            z = 0.5 * (z + counts[rank]);
+        }
+        z += REGISTERS * sigma((double) counts[0] / REGISTERS);
+        return Math.round(ALPHA_INFINITY * REGISTERS * REGISTERS / z);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+
+    // FNV-1a over the characters, then the MurmurHash3 finalizer so every input bit reaches the high bits
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.ExcelRecord;
+import com.example.filecreator.model.StringDictionary;
+
+/**
+ * Per-parse dictionaries for the low-cardinality text columns (importer name, IEC code, address, BE date,
+ * BCD, IGST and effective rates, CHA details). Every record is passed through {@link #encode(ExcelRecord)} before it
+ * reaches the sink, so equal values share one String instance across the whole file and the per-row copies
+ * become garbage immediately. Shared instances also carry their cached hash code, which makes later
+ * grouping and dictionary lookups cheap.
+ *
+ * <p>Each column stops taking new values after {@link #MAX_ENTRIES_PER_COLUMN} distinct ones, so a column
+ * that turns out to be unique per row does not make a streaming parse hold every value.
+ */
+final class IngestDictionary {
+
+    static final int MAX_ENTRIES_PER_COLUMN = 1 << 16;
+
+    private final StringDictionary importerName = new StringDictionary(MAX_ENTRIES_PER_COLUMN);
+    private final StringDictionary iecCode = new StringDictionary(MAX_ENTRIES_PER_COLUMN);
+    private final StringDictionary address = new StringDictionary(MAX_ENTRIES_PER_COLUMN);
+    private final StringDictionary beDate = new StringDictionary(MAX_ENTRIES_PER_COLUMN);
+    private final StringDictionary bcdRate = new StringDictionary(MAX_ENTRIES_PER_COLUMN);
+    private final StringDictionary igstRate = new StringDictionary(MAX_ENTRIES_PER_COLUMN);
+    private final StringDictionary effectiveRateOfDuty = new StringDictionary(MAX_ENTRIES_PER_COLUMN);
+    private final StringDictionary chaDetails = new StringDictionary(MAX_ENTRIES_PER_COLUMN);
+
+    ExcelRecord encode(ExcelRecord r) {
+        r.setImporterName(importerName.intern(r.getImporterName()));
+        r.setIecCode(iecCode.intern(r.getIecCode()));
+        r.setAddress(address.intern(r.getAddress()));
+        r.setBeDate(beDate.intern(r.getBeDate()));
+        r.setBcdRate(bcdRate.intern(r.getBcdRate()));
+        r.setIgstRate(igstRate.intern(r.getIgstRate()));
+        r.setEffectiveRateOfDuty(effectiveRateOfDuty.intern(r.getEffectiveRateOfDuty()));
+        r.setChaDetails(chaDetails.intern(r.getChaDetails()));
+        return r;
+    }
+
+    /** Wraps {@code sink} so every record is encoded on its way in. */
+    RecordSink encoding(RecordSink sink) {
+        return record -> sink.accept(encode(record));
+    }
+}
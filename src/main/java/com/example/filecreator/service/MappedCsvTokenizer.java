@@ -0,0 +1,207 @@
+package com.example.filecreator.service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * CSV tokenizer that works directly on a memory-mapped file instead of decoding it into characters. Each
+ * record is first scanned into field spans over the mapped bytes; only the columns the
+ * {@link RecordHandler} asks for are then copied out, so columns nobody reads never become Strings.
+ *
+ * <p>The grammar is that of {@code CSVFormat.DEFAULT.withIgnoreEmptyLines().withTrim()}: {@code ,}
+ * delimiter, {@code "} quotes only at the start of a field with {@code ""} as an escaped quote, {@code \r},
+ * {@code \n} or {@code \r\n} as record separators, empty lines skipped and field values trimmed. A UTF-8
+ * byte order mark at the very start of the file is skipped.
+ *
+ * <p>Files are mapped in regions of at most {@code regionBytes}, which also makes files over 2 GB
+ * readable. A record that crosses the end of a region is re-read from its start in the next region, so
+ * a single record must fit into one region.
+ */
+final class MappedCsvTokenizer {
+
+    static final long DEFAULT_REGION_BYTES = 1L << 30;
+
+    private static final int INCOMPLETE = -1;
+
+    /** Receives the records of one tokenizer run; fields of a record arrive in column order. */
+    interface RecordHandler {
+        /** Whether the value of this column is needed; unwanted columns are skipped without copying. */
+        boolean wants(int column);
+
+        /** A trimmed, unescaped UTF-8 field value in {@code bytes[0, length)}; the array is reused. */
+        void field(int column, byte[] bytes, int length);
+
+        /** Closes the record; an {@link IOException} stops tokenizing and is rethrown unchanged. */
+        void endRecord(int fieldCount) throws IOException;
+    }
+
+    private final FileChannel channel;
+    private final long regionBytes;
+
+    private int[] fieldStart = new int[32];
+    private int[] fieldEnd = new int[32];
+    private boolean[] fieldQuoted = new boolean[32];
+    private int fieldCount;
+    private byte[] scratch = new byte[256];
+
+    MappedCsvTokenizer(FileChannel channel) {
+        this(channel, DEFAULT_REGION_BYTES);
+    }
+
+    MappedCsvTokenizer(FileChannel channel, long regionBytes) {
+        this.channel = channel;
+        this.regionBytes = regionBytes;
+    }
+
+    /** Tokenizes the records in {@code [start, end)}; {@code start} must be a record boundary. */
+    void tokenize(long start, long end, RecordHandler handler) throws IOException {
+        long position = start;
+        if (start == 0 && end >= 3) {
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, 3);
+            if ((head.get(0) & 0xFF) == 0xEF && (head.get(1) & 0xFF) == 0xBB && (head.get(2) & 0xFF) == 0xBF) {
+                position = 3;
+            }
+        }
+        while (position < end) {
+            long regionEnd = Math.min(end, position + regionBytes);
+            boolean last = regionEnd == end;
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionEnd - position);
+            int consumed = tokenizeRegion(region, last, handler, position);
+            if (consumed == 0 && !last) {
+                throw new IOException("CSV record at byte " + position + " is larger than the " + regionBytes + " byte mapping region");
+            }
+            position += consumed;
+        }
+    }
+
+    /**
+     * @return the number of bytes consumed, i.e. the offset of the first record that did not end inside
+     * the region (or the region size when everything was consumed)
+     */
+    private int tokenizeRegion(MappedByteBuffer buf, boolean last, RecordHandler handler, long regionOffset) throws IOException {
+        int limit = buf.limit();
+        int p = 0;
+        while (p < limit) {
+            byte first = buf.get(p);
+            if (first == '\n') {
+                p++;
+                continue;
+            }
+            if (first == '\r') {
+                p = (p + 1 < limit && buf.get(p + 1) == '\n') ? p + 2 : p + 1;
+                continue;
+            }
+            int recordStart = p;
+            p = scanRecord(buf, p, limit, last, regionOffset);
+            if (p == INCOMPLETE) {
+                return recordStart;
+            }
+            emit(buf, handler);
+        }
+        return limit;
+    }
+
+    /** Records the field spans of one record starting at {@code p} and returns the offset after it. */
+    private int scanRecord(MappedByteBuffer buf, int p, int limit, boolean last, long regionOffset) throws IOException {
+        fieldCount = 0;
+        while (true) {
+            if (p < limit && buf.get(p) == '"') {
+                int contentStart = ++p;
+                while (true) {
+                    if (p >= limit) {
+                        if (last) throw new IOException("EOF reached before quoted CSV field starting at byte " + (regionOffset + contentStart - 1) + " finished");
+                        return INCOMPLETE;
+                    }
+                    byte b = buf.get(p);
+                    if (b == '"') {
+                        if (p + 1 < limit && buf.get(p + 1) == '"') {
+                            p += 2;
+                            continue;
+                        }
+                        if (p + 1 >= limit && !last) return INCOMPLETE;
+                        break;
+                    }
+                    p++;
+                }
+                addField(contentStart, p, true);
+                p++;
+                while (p < limit && isBlank(buf.get(p))) p++;
+                if (p < limit && !isDelimiterOrEol(buf.get(p))) {
+                    throw new IOException("Invalid character between quoted CSV field and delimiter at byte " + (regionOffset + p));
+                }
+            } else {
+                int fieldBegin = p;
+                while (p < limit && !isDelimiterOrEol(buf.get(p))) p++;
+                addField(fieldBegin, p, false);
+            }
+
+            if (p >= limit) {
+                return last ? p : INCOMPLETE;
+            }
+            byte b = buf.get(p);
+            if (b == ',') {
+                p++;
+                continue;
+            }
+            if (b == '\r') {
+                if (p + 1 < limit && buf.get(p + 1) == '\n') return p + 2;
+                return p + 1;
+            }
+            return p + 1;
+        }
+    }
+
+    private void emit(MappedByteBuffer buf, RecordHandler handler) throws IOException {
+        for (int column = 0; column < fieldCount; column++) {
+            if (!handler.wants(column)) continue;
+            int start = fieldStart[column];
+            int end = fieldEnd[column];
+            while (start < end && (buf.get(start) & 0xFF) <= ' ') start++;
+            while (end > start && (buf.get(end - 1) & 0xFF) <= ' ') end--;
+            int length = copy(buf, start, end, fieldQuoted[column]);
+            handler.field(column, scratch, length);
+        }
+        handler.endRecord(fieldCount);
+    }
+
+    private int copy(MappedByteBuffer buf, int start, int end, boolean quoted) {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        if (!quoted) {
+            for (int i = 0; i < length; i++) scratch[i] = buf.get(start + i);
+            return length;
+        }
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            scratch[n++] = b;
+            if (b == '"') i++;
+        }
+        return n;
+    }
+
+    private void addField(int start, int end, boolean quoted) {
+        if (fieldCount == fieldStart.length) {
+            int size = fieldCount * 2;
+            fieldStart = Arrays.copyOf(fieldStart, size);
+            fieldEnd = Arrays.copyOf(fieldEnd, size);
+            fieldQuoted = Arrays.copyOf(fieldQuoted, size);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldQuoted[fieldCount] = quoted;
+        fieldCount++;
+    }
+
+    private static boolean isDelimiterOrEol(byte b) {
+        return b == ',' || b == '\n' || b == '\r';
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+    }
+}
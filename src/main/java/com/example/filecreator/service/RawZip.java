@@ -0,0 +1,243 @@
+package com.example.filecreator.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Just enough of the ZIP format to copy entries of one ZIP into another without inflating and deflating
+ * them again, which {@link java.util.zip.ZipOutputStream} cannot do: {@link #entries} reads the entries of a
+ * ZIP with their compressed bytes and CRC, and a {@link Writer} writes such entries as they are, next to
+ * entries it deflates itself. No ZIP64, encryption or multi-disk archives; the template is a few MB.
+ */
+final class RawZip {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int UTF8_NAMES = 1 << 11;
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private RawZip() {
+    }
+
+    /** An entry with its data as stored in the ZIP, compressed or not according to {@link #method}. */
+    static final class Entry {
+        final String name;
+        final int method;
+        final int crc;
+        final int size;
+        // MS-DOS modification time and date, copied as they are
+        final int time;
+        final int date;
+        final byte[] data;
+
+        Entry(String name, int method, int crc, int size, int time, int date, byte[] data) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.time = time;
+            this.date = date;
+            this.data = data;
+        }
+    }
+
+    /** The file entries of {@code zip} in central directory order, directories left out. */
+    static List<Entry> entries(byte[] zip) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        int end = -1;
+        // the end record is 22 bytes plus a comment of up to 64 KB
+        for (int i = zip.length - 22; i >= Math.max(0, zip.length - 22 - 0xFFFF); i--) {
+            if (buffer.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException("Not a ZIP file");
+        }
+        int count = Short.toUnsignedInt(buffer.getShort(end + 10));
+        long directory = Integer.toUnsignedLong(buffer.getInt(end + 16));
+        if (count == 0xFFFF || directory == 0xFFFFFFFFL) {
+            throw new IOException("ZIP64 archives are not supported");
+        }
+        List<Entry> entries = new ArrayList<>(count);
+        int position = (int) directory;
+        for (int i = 0; i < count; i++) {
+            if (buffer.getInt(position) != CENTRAL_HEADER) {
+                throw new IOException("Corrupt ZIP central directory");
+            }
+            int flags = Short.toUnsignedInt(buffer.getShort(position + 8));
+            int method = Short.toUnsignedInt(buffer.getShort(position + 10));
+            int time = Short.toUnsignedInt(buffer.getShort(position + 12));
+            int date = Short.toUnsignedInt(buffer.getShort(position + 14));
+            int crc = buffer.getInt(position + 16);
+            long compressedSize = Integer.toUnsignedLong(buffer.getInt(position + 20));
+            long size = Integer.toUnsignedLong(buffer.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+            long localHeader = Integer.toUnsignedLong(buffer.getInt(position + 42));
+            String name = new String(zip, position + 46, nameLength,
+                    (flags & UTF8_NAMES) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+            position += 46 + nameLength + extraLength + commentLength;
+
+            if ((flags & 1) != 0) {
+                throw new IOException("Encrypted ZIP entry " + name);
+            }
+            if (method != STORED && method != DEFLATED) {
+                throw new IOException("Unsupported compression method " + method + " for ZIP entry " + name);
+            }
+            if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || localHeader == 0xFFFFFFFFL) {
+                throw new IOException("ZIP64 entries are not supported: " + name);
+            }
+            if (name.endsWith("/")) {
+                continue;
+            }
+            int local = (int) localHeader;
+            if (buffer.getInt(local) != LOCAL_HEADER) {
+                throw new IOException("Corrupt ZIP entry " + name);
+            }
+            int data = local + 30 + Short.toUnsignedInt(buffer.getShort(local + 26))
+                    + Short.toUnsignedInt(buffer.getShort(local + 28));
+            if (data + compressedSize > zip.length) {
+                throw new IOException("Truncated ZIP entry " + name);
+            }
+            byte[] bytes = new byte[(int) compressedSize];
+            System.arraycopy(zip, data, bytes, 0, bytes.length);
+            entries.add(new Entry(name, method, crc, (int) size, time, date, bytes));
+        }
+        return entries;
+    }
+
+    /**
+     * Deflates {@code content} into an entry, given what {@link Content#writeTo} writes; the name, time and
+     * date are taken from {@code like}.
+     */
+    static Entry deflate(Entry like, Content content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(1024, like.data.length + like.data.length / 4));
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        long size;
+        try {
+            CountingOutputStream counted = new CountingOutputStream(new DeflaterOutputStream(compressed, deflater, 8192), crc);
+            content.writeTo(counted);
+            counted.finish();
+            size = counted.count;
+        } finally {
+            deflater.end();
+        }
+        if (size > 0xFFFFFFFEL) {
+            throw new IOException("ZIP64 entries are not supported: " + like.name);
+        }
+        return new Entry(like.name, DEFLATED, (int) crc.getValue(), (int) size, like.time, like.date, compressed.toByteArray());
+    }
+
+    /** Writes the content of an entry to be deflated. */
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /** Writes a ZIP of {@link Entry entries} to a stream, their data as it is. Not thread-safe. */
+    static final class Writer {
+        private final OutputStream out;
+        private final ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        private final ByteBuffer header = ByteBuffer.allocate(46).order(ByteOrder.LITTLE_ENDIAN);
+        private long written;
+        private int count;
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        void add(Entry entry) throws IOException {
+            if (count == 0xFFFF || written > 0xFFFFFFFEL - entry.data.length) {
+                throw new IOException("ZIP64 archives are not supported");
+            }
+            byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            int flags = isAscii(name) ? 0 : UTF8_NAMES;
+
+            header.clear();
+            header.putInt(LOCAL_HEADER).putShort((short) VERSION).putShort((short) flags)
+                    .putShort((short) entry.method).putShort((short) entry.time).putShort((short) entry.date)
+                    .putInt(entry.crc).putInt(entry.data.length).putInt(entry.size)
+                    .putShort((short) name.length).putShort((short) 0);
+            out.write(header.array(), 0, header.position());
+            out.write(name);
+            out.write(entry.data);
+
+            header.clear();
+            header.putInt(CENTRAL_HEADER).putShort((short) VERSION).putShort((short) VERSION).putShort((short) flags)
+                    .putShort((short) entry.method).putShort((short) entry.time).putShort((short) entry.date)
+                    .putInt(entry.crc).putInt(entry.data.length).putInt(entry.size)
+                    .putShort((short) name.length).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) written);
+            directory.write(header.array(), 0, header.position());
+            directory.write(name);
+
+            written += 30 + name.length + entry.data.length;
+            count++;
+        }
+
+        /** Writes the central directory; the stream is left open. */
+        void finish() throws IOException {
+            directory.writeTo(out);
+            header.clear();
+            header.putInt(END_OF_CENTRAL_DIRECTORY).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) count).putShort((short) count)
+                    .putInt(directory.size()).putInt((int) written).putShort((short) 0);
+            out.write(header.array(), 0, header.position());
+            out.flush();
+        }
+
+        private static boolean isAscii(byte[] name) {
+            for (byte b : name) {
+                if (b < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // CRC and size of what goes into the deflater
+    private static final class CountingOutputStream extends OutputStream {
+        private final DeflaterOutputStream out;
+        private final CRC32 crc;
+        private long count;
+
+        CountingOutputStream(DeflaterOutputStream out, CRC32 crc) {
+            this.out = out;
+            this.crc = crc;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            crc.update(b, off, len);
+            count += len;
+        }
+
+        void finish() throws IOException {
+            out.finish();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.ExcelRecord;
+import org.apache.commons.csv.CSVRecord;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fills {@link ExcelRecord}s from raw cells according to a resolved {@link ColumnBinding}, decoding typed
+ * columns through a {@link CellDecoder}. One assembler serves one reader thread; parallel readers give each
+ * chunk its own and merge the decoders afterwards.
+ */
+final class RecordAssembler {
+
+    private static final RecordField[] FIELDS = RecordField.all();
+
+    private final ColumnBinding binding;
+    private final CellDecoder decoder;
+    private final AsciiView ascii = new AsciiView();
+
+    RecordAssembler(ColumnBinding binding) {
+        this.binding = binding;
+        this.decoder = new CellDecoder();
+    }
+
+    ColumnBinding binding() {
+        return binding;
+    }
+
+    CellDecoder decoder() {
+        return decoder;
+    }
+
+    ExcelRecord fromCsv(CSVRecord rec) {
+        ExcelRecord r = new ExcelRecord();
+        for (RecordField field : FIELDS) {
+            int column = binding.column(field);
+            if (column >= 0 && column < rec.size()) {
+                assign(r, field, rec.get(column));
+            }
+        }
+        return r;
+    }
+
+    /** Writes a text cell into every field bound to its column. */
+    void text(ExcelRecord r, int column, String raw) {
+        for (RecordField field : binding.fieldsAt(column)) {
+            assign(r, field, raw);
+        }
+    }
+
+    /** Writes a numeric spreadsheet cell into every field bound to its column without going through text. */
+    void numeric(ExcelRecord r, int column, double value, boolean formula) {
+        for (RecordField field : binding.fieldsAt(column)) {
+            switch (field.kind()) {
+                case INTEGER:
+                    assignInteger(r, field, decoder.integer(field, value));
+                    break;
+                case DECIMAL:
+                    assignDecimal(r, field, decoder.decimal(field, value, formula));
+                    break;
+                default:
+                    assign(r, field, CellDecoder.numericText(value, formula));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Writes a trimmed UTF-8 field into every field bound to its column. Numeric columns are decoded
+     * straight from the bytes; a String is only created for text columns.
+     */
+    void utf8(ExcelRecord r, int column, byte[] bytes, int length) {
+        String text = null;
+        for (RecordField field : binding.fieldsAt(column)) {
+            switch (field.kind()) {
+                case INTEGER:
+                    assignInteger(r, field, decoder.integer(field, ascii.wrap(bytes, length)));
+                    break;
+                case DECIMAL:
+                    assignDecimal(r, field, decoder.decimal(field, ascii.wrap(bytes, length)));
+                    break;
+                default:
+                    if (text == null) text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                    assignText(r, field, text);
+                    break;
+            }
+        }
+    }
+
+    void assign(ExcelRecord r, RecordField field, String raw) {
+        String value = raw != null ? raw.trim() : null;
+        switch (field.kind()) {
+            case INTEGER:
+                assignInteger(r, field, decoder.integer(field, value));
+                break;
+            case DECIMAL:
+                assignDecimal(r, field, decoder.decimal(field, value));
+                break;
+            default:
+                assignText(r, field, value);
+                break;
+        }
+    }
+
+    private static void assignText(ExcelRecord r, RecordField field, String value) {
+        switch (field) {
+            case BE_NUMBER: r.setBeNumber(value); break;
+            case BE_DATE: r.setBeDate(value); break;
+            case IEC_CODE: r.setIecCode(value); break;
+            case IMPORTER_NAME: r.setImporterName(value); break;
+            case ADDRESS: r.setAddress(value); break;
+            case EIGHT_DIGIT_HS_CODE: r.setEightDigitHsCode(value); break;
+            case FULL_ITEM_DESCRIPTION: r.setFullItemDescription(value); break;
+            case BCD_RATE: r.setBcdRate(value); break;
+            case IGST_RATE: r.setIgstRate(value); break;
+            case EFFECTIVE_RATE_OF_DUTY: r.setEffectiveRateOfDuty(value); break;
+            case CHA_DETAILS: r.setChaDetails(value); break;
+            default: break;
+        }
+    }
+
+    private static void assignInteger(ExcelRecord r, RecordField field, Integer value) {
+        if (field == RecordField.SR_NO) r.setSrNo(value);
+    }
+
+    private static void assignDecimal(ExcelRecord r, RecordField field, BigDecimal value) {
+        switch (field) {
+            case ASSESSABLE_VALUE_AMOUNT: r.setAssessableValueAmount(value); break;
+            case TOTAL_DUTY_PAID_AMOUNT: r.setTotalDutyPaidAmount(value); break;
+            case DUTY_PAYABLE: r.setDutyPayable(value); break;
+            case DIFFERENTIAL_DUTY: r.setDifferentialDuty(value); break;
+            default: break;
+        }
+    }
+
+    /**
+     * Read-only character view over raw bytes for the numeric scanners. Bytes are widened one to one, so
+     * anything outside ASCII simply reads as a non-digit.
+     */
+    private static final class AsciiView implements CharSequence {
+        private byte[] bytes;
+        private int length;
+
+        AsciiView wrap(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.filecreator.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link com.example.filecreator.model.ExcelRecord} fields the parser fills, each with the header
+ * names it is recognised by. Aliases are tried in order; the first one present in the header row wins.
+ */
+public enum RecordField {
+    SR_NO(Kind.INTEGER, "Sr. No.", "Sr No", "Sr. No"),
+    BE_NUMBER(Kind.TEXT, "BE Number"),
+    BE_DATE(Kind.TEXT, "BE Date"),
+    IEC_CODE(Kind.TEXT, "IEC Code", "IEC"),
+    IMPORTER_NAME(Kind.TEXT, "Importer Name"),
+    ADDRESS(Kind.TEXT, "ADDRESS", "Address"),
+    EIGHT_DIGIT_HS_CODE(Kind.TEXT, "Eight Digit HS Code"),
+    FULL_ITEM_DESCRIPTION(Kind.TEXT, "Full Item Description"),
+    ASSESSABLE_VALUE_AMOUNT(Kind.DECIMAL, "Assessable Value Amount"),
+    BCD_RATE(Kind.TEXT, "BCD Rate"),
+    IGST_RATE(Kind.TEXT, "IGST Rate"),
+    TOTAL_DUTY_PAID_AMOUNT(Kind.DECIMAL, "Total Duty Paid Amount"),
+    EFFECTIVE_RATE_OF_DUTY(Kind.TEXT, "Effective Rate of duty (BCD@35% + SWS@10% + IGST@28%)"),
+    DUTY_PAYABLE(Kind.DECIMAL, "Duty Payable"),
+    DIFFERENTIAL_DUTY(Kind.DECIMAL, "Differential Duty"),
+    CHA_DETAILS(Kind.TEXT, "CHA details", "CHA Details", "CHA", "CHA details ", " CHA details");
+
+    public enum Kind {
+        TEXT, INTEGER, DECIMAL
+    }
+
+    private static final RecordField[] VALUES = values();
+
+    private final Kind kind;
+    private final List<String> aliases;
+
+    RecordField(Kind kind, String... aliases) {
+        this.kind = kind;
+        this.aliases = Collections.unmodifiableList(Arrays.asList(aliases));
+    }
+
+    Kind kind() {
+        return kind;
+    }
+
+    List<String> aliases() {
+        return aliases;
+    }
+
+    static RecordField[] all() {
+        return VALUES;
+    }
+}
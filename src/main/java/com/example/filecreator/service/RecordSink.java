@@ -0,0 +1,18 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.ExcelRecord;
+
+import java.io.IOException;
+
+/**
+ * Receives parsed records one at a time, in file order, while {@link ExcelParserService} is still reading
+ * the input. Consumers that only need each record once (document generation, aggregation) can use a sink
+ * instead of the {@code List} returned by {@code parse}, so no list of every row is ever built.
+ *
+ * <p>An {@link IOException} thrown by {@link #accept(ExcelRecord)} stops the parse and is rethrown by
+ * {@code parse} unchanged.
+ */
+@FunctionalInterface
+public interface RecordSink {
+    void accept(ExcelRecord record) throws IOException;
+}
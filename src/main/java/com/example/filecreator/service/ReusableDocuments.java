@@ -0,0 +1,17 @@
+package com.example.filecreator.service;
+
+import java.io.IOException;
+
+/**
+ * Documents that can be written again instead of rendered, looked up by {@link DocumentFingerprint}; in
+ * practice the archive of a previous generation job.
+ */
+@FunctionalInterface
+public interface ReusableDocuments {
+
+    /** Nothing to reuse; every document is rendered. */
+    ReusableDocuments NONE = fingerprint -> null;
+
+    /** The bytes of a previously generated document with this fingerprint, or null if there is none. */
+    byte[] find(String fingerprint) throws IOException;
+}
@@ -0,0 +1,29 @@
+package com.example.filecreator.service;
+
+import java.io.IOException;
+
+/**
+ * Receives the cells of one spreadsheet sheet row by row from a streaming reader. Rows the file does not
+ * contain at all (i.e. rows Excel never touched) are skipped, exactly like {@code Sheet.iterator()}; cells
+ * absent from a row are simply not reported.
+ *
+ * <p>Numeric cells, including cached numeric formula results, arrive as {@code double}s so typed columns
+ * never round-trip through text. Every other cell arrives as text: formulas as their cached result,
+ * booleans as {@code true}/{@code false}, blank and error cells as an empty string.
+ *
+ * <p>An {@link IOException} thrown from {@link #endRow()} stops the read and is rethrown unchanged by the
+ * reader.
+ */
+interface SheetRowHandler {
+    void startRow(int rowNum);
+
+    void cell(int column, String value);
+
+    /**
+     * @param formula whether the value is the cached result of a formula, which renders as text without
+     *                stripping trailing zeros (see {@link CellDecoder#numericText(double, boolean)})
+     */
+    void numericCell(int column, double value, boolean formula);
+
+    void endRow() throws IOException;
+}
@@ -0,0 +1,556 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.AggregatedExcelRecord;
+import com.example.filecreator.model.ExcelRecord;
+import com.example.filecreator.model.ExcelRecordView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * A {@link DataAggregationService.GroupedAggregation} that stays within a memory budget by spilling to disk.
+ * Records are aggregated in memory until the estimated size of the groups reaches the budget; the groups
+ * are then written to a run file, sorted by grouping and top-level key, and aggregation starts over. Each
+ * run thus holds the aggregation of one consecutive stretch of the input.
+ *
+ * <p>{@link #forEachResult} merges the runs like an external merge sort: the run files are read side by
+ * side in key order (at most {@value #MAX_FAN_IN} at a time, in several passes if there are more), so only
+ * the groups of one top-level key, e.g. one importer and its HS chapters, are in memory at a time, and the
+ * parts of a group from different runs are merged in run order. The finished groups are then sorted back
+ * into order of first appearance by the run and position they first appeared in, spilling to sorted runs
+ * again if they outgrow the budget, so the result is exactly that of aggregating everything in memory.
+ * Without any spill it is the in-memory result. A single top-level group still has to fit in memory.
+ *
+ * <p>Close the aggregation to delete run files left behind by a failure; {@link #forEachResult} deletes
+ * them itself. Not thread-safe, but aggregations of consecutive parts of the input can be
+ * {@link #merge merged}.
+ */
+public final class SpillingAggregation implements RecordSink, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SpillingAggregation.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int END_OF_RUN = -1;
+    private static final int UNKNOWN_RUN = -1;
+    // run files read side by side in one merge pass
+    private static final int MAX_FAN_IN = 64;
+
+    private final DataAggregationService aggregationService;
+    // null for the plain importer aggregation, whose records carry no grouping labels
+    private final List<GroupingSpec> groupings;
+    // null to keep every record
+    private final BeDateRange range;
+    private final long memoryBudget;
+    private final Path spillDir;
+    private DataAggregationService.GroupedAggregation current;
+    private final List<Path> runs = new ArrayList<>();
+    // output of an unfinished merge pass
+    private final List<Path> compacted = new ArrayList<>();
+    // finished groups, sorted back into order of first appearance
+    private final List<Path> ordered = new ArrayList<>();
+
+    SpillingAggregation(DataAggregationService aggregationService, List<GroupingSpec> groupings,
+                        BeDateRange range, long memoryBudget, Path spillDir) {
+        this.aggregationService = aggregationService;
+        this.groupings = groupings;
+        this.range = range;
+        this.memoryBudget = memoryBudget;
+        this.spillDir = spillDir;
+        this.current = newRun();
+    }
+
+    @Override
+    public void accept(ExcelRecord record) throws IOException {
+        add(record);
+    }
+
+    public void add(ExcelRecordView record) throws IOException {
+        if (range != null && !range.contains(record)) {
+            return;
+        }
+        current.add(record);
+        if (current.estimatedBytes() >= memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * Folds in the aggregation of the records that came after this one's and returns this aggregation;
+     * run files of {@code later} are taken over.
+     */
+    public SpillingAggregation merge(SpillingAggregation later) throws IOException {
+        if (later.runs.isEmpty()) {
+            current.merge(later.current);
+        } else {
+            // keep the runs in input order: ours, our groups in memory, later's runs, later's groups in memory
+            spill();
+            runs.addAll(later.runs);
+            later.runs.clear();
+            current = later.current;
+        }
+        later.current = later.newRun();
+        if (current.estimatedBytes() >= memoryBudget) {
+            spill();
+        }
+        return this;
+    }
+
+    /** Number of run files written so far. */
+    public int spilledRuns() {
+        return runs.size();
+    }
+
+    /** All groups, in the order {@link DataAggregationService.GroupedAggregation#result()} lists them. */
+    public List<AggregatedExcelRecord> result() throws IOException {
+        List<AggregatedExcelRecord> aggregatedRecords = new ArrayList<>();
+        forEachResult(aggregatedRecords::add);
+        return aggregatedRecords;
+    }
+
+    /**
+     * Hands out the groups one at a time, in the same order as {@link #result()}. After a spill, finished
+     * groups are only kept in memory up to the budget as well, so together with a consumer that does not
+     * keep them, e.g. {@link WordDocumentService.AggregatedArchive}, no step needs all groups at once.
+     */
+    public void forEachResult(ResultHandler handler) throws IOException {
+        ResultHandler emit = groupings != null ? handler : aggregated -> {
+            aggregated.setGrouping(null);
+            aggregated.setGroupKey(null);
+            handler.accept(aggregated);
+        };
+        if (runs.isEmpty()) {
+            for (AggregatedExcelRecord aggregated : current.result()) {
+                emit.accept(aggregated);
+            }
+            return;
+        }
+        spill();
+        try {
+            mergeRuns(emit);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        for (Path run : compacted) {
+            Files.deleteIfExists(run);
+        }
+        compacted.clear();
+        for (Path run : ordered) {
+            Files.deleteIfExists(run);
+        }
+        ordered.clear();
+    }
+
+    private DataAggregationService.GroupedAggregation newRun() {
+        return aggregationService.newGroupedAggregation(
+                groupings != null ? groupings : List.of(GroupingSpec.IMPORTER));
+    }
+
+    private void spill() throws IOException {
+        List<GroupNode> roots = current.roots();
+        if (roots.stream().allMatch(root -> root.children.isEmpty())) {
+            return;
+        }
+        Path run = newRunFile();
+        runs.add(run);
+        try (DataOutputStream out = openRun(run)) {
+            for (int grouping = 0; grouping < roots.size(); grouping++) {
+                List<String> keys = new ArrayList<>(roots.get(grouping).children.keySet());
+                Map<String, Integer> positions = new HashMap<>();
+                for (int position = 0; position < keys.size(); position++) {
+                    positions.put(keys.get(position), position);
+                }
+                keys.sort(Comparator.naturalOrder());
+                for (String key : keys) {
+                    // the run index is only known once all runs are, see RunReader
+                    writeEntry(out, grouping, UNKNOWN_RUN, positions.get(key), key, roots.get(grouping).children.get(key));
+                }
+            }
+            out.writeInt(END_OF_RUN);
+        }
+        log.debug("Spilled aggregation run {} (~{} bytes in memory)", run.getFileName(), current.estimatedBytes());
+        current = newRun();
+    }
+
+    private void mergeRuns(ResultHandler handler) throws IOException {
+        // merge passes over at most MAX_FAN_IN runs at a time until one pass can read them all
+        while (runs.size() > MAX_FAN_IN) {
+            List<Path> merged = new ArrayList<>();
+            for (int from = 0; from < runs.size(); from += MAX_FAN_IN) {
+                Path run = newRunFile();
+                merged.add(run);
+                compacted.add(run);
+                try (DataOutputStream out = openRun(run)) {
+                    mergeFiles(runs.subList(from, Math.min(from + MAX_FAN_IN, runs.size())), from,
+                            (grouping, first, position, key, group) -> writeEntry(out, grouping, first, position, key, group));
+                    out.writeInt(END_OF_RUN);
+                }
+            }
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            runs.clear();
+            runs.addAll(merged);
+            compacted.clear();
+        }
+
+        // the merge yields groups in key order; they are put back in order of first appearance, a group
+        // first appeared in the earliest run that has it, at its position there
+        List<GroupingSpec> specs = current.groupings();
+        List<Block> blocks = new ArrayList<>();
+        long[] bufferedBytes = {0};
+        mergeFiles(runs, 0, (grouping, first, position, key, group) -> {
+            Block block = new Block(grouping, first, position);
+            group.collect(specs.get(grouping).toString(), key, block.records);
+            blocks.add(block);
+            bufferedBytes[0] += block.estimatedBytes();
+            if (bufferedBytes[0] >= memoryBudget) {
+                writeOrderedRun(blocks);
+                bufferedBytes[0] = 0;
+            }
+        });
+        if (ordered.isEmpty()) {
+            blocks.sort(Block.ORDER);
+            for (Block block : blocks) {
+                block.emit(handler);
+            }
+            return;
+        }
+        writeOrderedRun(blocks);
+        while (ordered.size() > MAX_FAN_IN) {
+            List<Path> merged = new ArrayList<>();
+            for (int from = 0; from < ordered.size(); from += MAX_FAN_IN) {
+                Path run = newRunFile();
+                merged.add(run);
+                compacted.add(run);
+                try (DataOutputStream out = openRun(run)) {
+                    mergeOrdered(ordered.subList(from, Math.min(from + MAX_FAN_IN, ordered.size())), block -> block.writeTo(out));
+                    out.writeInt(END_OF_RUN);
+                }
+            }
+            for (Path run : ordered) {
+                Files.deleteIfExists(run);
+            }
+            ordered.clear();
+            ordered.addAll(merged);
+            compacted.clear();
+        }
+        mergeOrdered(ordered, block -> block.emit(handler));
+    }
+
+    // sorts the blocks into a run of their own and clears them
+    private void writeOrderedRun(List<Block> blocks) throws IOException {
+        blocks.sort(Block.ORDER);
+        Path run = newRunFile();
+        ordered.add(run);
+        try (DataOutputStream out = openRun(run)) {
+            for (Block block : blocks) {
+                block.writeTo(out);
+            }
+            out.writeInt(END_OF_RUN);
+        }
+        blocks.clear();
+    }
+
+    // hands out the blocks of the given ordered runs in order; only the head block of each run is in memory
+    private static void mergeOrdered(List<Path> files, BlockHandler merged) throws IOException {
+        PriorityQueue<OrderedRunReader> readers = new PriorityQueue<>(Comparator.comparing(r -> r.head, Block.ORDER));
+        List<OrderedRunReader> open = new ArrayList<>(files.size());
+        try {
+            for (Path file : files) {
+                OrderedRunReader reader = new OrderedRunReader(file);
+                open.add(reader);
+                if (reader.next()) {
+                    readers.add(reader);
+                }
+            }
+            while (!readers.isEmpty()) {
+                OrderedRunReader reader = readers.poll();
+                merged.accept(reader.head);
+                if (reader.next()) {
+                    readers.add(reader);
+                }
+            }
+        } finally {
+            for (OrderedRunReader reader : open) {
+                reader.in.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the given consecutive runs side by side and hands every group, merged across the runs in run
+     * order, to {@code merged} in grouping and key order. {@code firstRun} is the index of the first file
+     * among all runs written by {@link #spill()}.
+     */
+    private static void mergeFiles(List<Path> files, int firstRun, MergedGroupHandler merged) throws IOException {
+        Map<String, String> formattedBeDates = new HashMap<>();
+        PriorityQueue<RunReader> readers = new PriorityQueue<>(Comparator.<RunReader>comparingInt(r -> r.grouping)
+                .thenComparing(r -> r.key)
+                .thenComparingInt(r -> r.index));
+        List<RunReader> open = new ArrayList<>(files.size());
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                RunReader reader = new RunReader(firstRun + i, files.get(i));
+                open.add(reader);
+                advance(reader, readers);
+            }
+            while (!readers.isEmpty()) {
+                RunReader first = readers.poll();
+                int grouping = first.grouping;
+                int run = first.run;
+                int position = first.position;
+                String key = first.key;
+                GroupNode group = GroupNode.readFrom(first.in, formattedBeDates);
+                advance(first, readers);
+                // the same group from later runs, in run order
+                while (!readers.isEmpty() && readers.peek().grouping == grouping && readers.peek().key.equals(key)) {
+                    RunReader later = readers.poll();
+                    group.merge(GroupNode.readFrom(later.in, formattedBeDates));
+                    advance(later, readers);
+                }
+                merged.accept(grouping, run, position, key, group);
+            }
+        } finally {
+            for (RunReader reader : open) {
+                reader.in.close();
+            }
+        }
+    }
+
+    private static void advance(RunReader reader, PriorityQueue<RunReader> readers) throws IOException {
+        if (reader.next()) {
+            readers.add(reader);
+        }
+    }
+
+    private Path newRunFile() throws IOException {
+        Files.createDirectories(spillDir);
+        return spillDir.resolve("spill-" + UUID.randomUUID() + ".run");
+    }
+
+    private static DataOutputStream openRun(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE));
+    }
+
+    private static void writeEntry(DataOutput out, int grouping, int run, int position, String key, GroupNode group)
+            throws IOException {
+        out.writeInt(grouping);
+        out.writeInt(run);
+        out.writeInt(position);
+        writeText(out, key);
+        group.writeTo(out);
+    }
+
+    static void writeText(DataOutput out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readText(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface MergedGroupHandler {
+        void accept(int grouping, int run, int position, String key, GroupNode group) throws IOException;
+    }
+
+    /**
+     * Reads the entries of one run file: the header of the next group, then the group itself. Each header
+     * says in which run and at which position the group first appeared; a run written by {@link #spill()}
+     * leaves the run to the reader, whose index is the file's place among all runs.
+     */
+    private static final class RunReader {
+        private final int index;
+        private final DataInputStream in;
+        private int grouping;
+        private int run;
+        private int position;
+        private String key;
+
+        private RunReader(int index, Path file) throws IOException {
+            this.index = index;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+        }
+
+        private boolean next() throws IOException {
+            grouping = in.readInt();
+            if (grouping == END_OF_RUN) {
+                return false;
+            }
+            int written = in.readInt();
+            run = written == UNKNOWN_RUN ? index : written;
+            position = in.readInt();
+            key = readText(in);
+            return true;
+        }
+    }
+
+    /** Receives the groups of {@link #forEachResult}. */
+    @FunctionalInterface
+    public interface ResultHandler {
+        void accept(AggregatedExcelRecord aggregated) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface BlockHandler {
+        void accept(Block block) throws IOException;
+    }
+
+    /** Reads the blocks of a run written by {@link #writeOrderedRun}. */
+    private static final class OrderedRunReader {
+        private final DataInputStream in;
+        private Block head;
+
+        private OrderedRunReader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+        }
+
+        private boolean next() throws IOException {
+            head = Block.readFrom(in);
+            return head != null;
+        }
+    }
+
+    /** The records of one top-level group and its descendants, with where the group first appeared. */
+    private static final class Block {
+        private static final Comparator<Block> ORDER = Comparator.<Block>comparingInt(b -> b.grouping)
+                .thenComparingInt(b -> b.run)
+                .thenComparingInt(b -> b.position);
+        private static final long RECORD_BYTES = 200;
+
+        private final int grouping;
+        private final int run;
+        private final int position;
+        private final List<AggregatedExcelRecord> records = new ArrayList<>();
+
+        private Block(int grouping, int run, int position) {
+            this.grouping = grouping;
+            this.run = run;
+            this.position = position;
+        }
+
+        private void emit(ResultHandler handler) throws IOException {
+            for (AggregatedExcelRecord aggregated : records) {
+                handler.accept(aggregated);
+            }
+        }
+
+        private long estimatedBytes() {
+            long bytes = 0;
+            for (AggregatedExcelRecord aggregated : records) {
+                bytes += RECORD_BYTES;
+                for (String text : texts(aggregated)) {
+                    bytes += text != null ? 2L * text.length() : 0;
+                }
+            }
+            return bytes;
+        }
+
+        private void writeTo(DataOutput out) throws IOException {
+            out.writeInt(grouping);
+            out.writeInt(run);
+            out.writeInt(position);
+            out.writeInt(records.size());
+            for (AggregatedExcelRecord aggregated : records) {
+                for (String text : texts(aggregated)) {
+                    writeText(out, text);
+                }
+                writeText(out, decimal(aggregated.getTotalDifferentialDuty()));
+                writeText(out, decimal(aggregated.getTotalAssessableValue()));
+                writeText(out, decimal(aggregated.getTotalDutyPaid()));
+                writeText(out, decimal(aggregated.getTotalDutyPayable()));
+            }
+        }
+
+        // null at the end of the run
+        private static Block readFrom(DataInput in) throws IOException {
+            int grouping = in.readInt();
+            if (grouping == END_OF_RUN) {
+                return null;
+            }
+            Block block = new Block(grouping, in.readInt(), in.readInt());
+            for (int i = in.readInt(); i > 0; i--) {
+                AggregatedExcelRecord aggregated = new AggregatedExcelRecord();
+                aggregated.setGrouping(readText(in));
+                aggregated.setGroupKey(readText(in));
+                aggregated.setImporterName(readText(in));
+                aggregated.setAggregatedIecCodes(readText(in));
+                aggregated.setAddress(readText(in));
+                aggregated.setAggregatedHsCodes(readText(in));
+                aggregated.setAggregatedBeNumbers(readText(in));
+                aggregated.setAggregatedBeDates(readText(in));
+                aggregated.setAggregatedDescriptions(readText(in));
+                aggregated.setAggregatedBcdRates(readText(in));
+                aggregated.setAggregatedIgstRates(readText(in));
+                aggregated.setAggregatedEffectiveRates(readText(in));
+                aggregated.setAggregatedSrNos(readText(in));
+                aggregated.setAggregatedChaDetails(readText(in));
+                aggregated.setTotalDifferentialDuty(decimal(readText(in)));
+                aggregated.setTotalAssessableValue(decimal(readText(in)));
+                aggregated.setTotalDutyPaid(decimal(readText(in)));
+                aggregated.setTotalDutyPayable(decimal(readText(in)));
+                block.records.add(aggregated);
+            }
+            return block;
+        }
+
+        // the text fields, in the order readFrom reads them back
+        private static String[] texts(AggregatedExcelRecord aggregated) {
+            return new String[]{
+                    aggregated.getGrouping(), aggregated.getGroupKey(), aggregated.getImporterName(),
+                    aggregated.getAggregatedIecCodes(), aggregated.getAddress(), aggregated.getAggregatedHsCodes(),
+                    aggregated.getAggregatedBeNumbers(), aggregated.getAggregatedBeDates(),
+                    aggregated.getAggregatedDescriptions(), aggregated.getAggregatedBcdRates(),
+                    aggregated.getAggregatedIgstRates(), aggregated.getAggregatedEffectiveRates(),
+                    aggregated.getAggregatedSrNos(), aggregated.getAggregatedChaDetails()
+            };
+        }
+
+        private static String decimal(BigDecimal value) {
+            return value != null ? value.toString() : null;
+        }
+
+        private static BigDecimal decimal(String text) {
+            return text != null ? new BigDecimal(text) : null;
+        }
+    }
+}
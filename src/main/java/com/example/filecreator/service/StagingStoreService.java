@@ -0,0 +1,248 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.ExcelRecordBatch;
+import com.example.filecreator.model.StagedUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Upload-once staging: a staged upload is kept on disk under an opaque handle, so preview and both kinds of
+ * document generation can run against it without the file being sent and parsed again.
+ *
+ * <p>Two separate bounds apply. A handle stays valid for {@code filecreator.staging.ttl} after its last
+ * use; expired uploads are deleted by a periodic sweep. The parsed records of a handle are cached as an
+ * {@link ExcelRecordBatch} in an LRU bounded by entry count and estimated heap; an evicted batch is simply
+ * parsed again from the staged file on next use.
+ */
+@Service
+public class StagingStoreService {
+
+    private static final Logger log = LoggerFactory.getLogger(StagingStoreService.class);
+
+    @Autowired
+    private ExcelParserService parserService;
+
+    /** Directory holding staged uploads; emptied on startup since handles do not survive a restart. */
+    @Value("${filecreator.staging.dir:${java.io.tmpdir}/filecreator-staging}")
+    private String stagingDir = Paths.get(System.getProperty("java.io.tmpdir"), "filecreator-staging").toString();
+
+    /** How long a handle stays valid after its last use. */
+    @Value("${filecreator.staging.ttl:30m}")
+    private Duration ttl = Duration.ofMinutes(30);
+
+    /** Maximum number of parsed uploads kept in memory. */
+    @Value("${filecreator.staging.cache.max-entries:8}")
+    private int maxCachedEntries = 8;
+
+    /** Maximum estimated heap of all parsed uploads kept in memory. */
+    @Value("${filecreator.staging.cache.max-size:256MB}")
+    private DataSize maxCachedSize = DataSize.ofMegabytes(256);
+
+    private final Map<String, Staged> staged = new ConcurrentHashMap<>();
+
+    // access-ordered, so iteration starts at the least recently used batch; guarded by itself
+    private final LinkedHashMap<String, ExcelRecordBatch> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    @PostConstruct
+    public void createStagingDir() throws IOException {
+        Path dir = Paths.get(stagingDir);
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dir, "staged-*")) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+    }
+
+    /** Stores the upload under a new handle and parses it once, which also validates it. */
+    public StagedUpload stage(MultipartFile file) throws IOException {
+        String handle = UUID.randomUUID().toString();
+        Path dir = Paths.get(stagingDir);
+        Files.createDirectories(dir);
+        Path path = dir.resolve("staged-" + handle + UploadSpoolService.extension(file.getOriginalFilename()));
+        ExcelRecordBatch batch;
+        try {
+            file.transferTo(path.toFile());
+            batch = parse(path);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        Staged entry = new Staged(handle, path, file.getOriginalFilename(), Files.size(path), batch.size());
+        entry.touch(ttl);
+        staged.put(handle, entry);
+        cache(handle, batch);
+        log.debug("Staged {} as {} ({} records)", file.getOriginalFilename(), handle, batch.size());
+        return entry.describe();
+    }
+
+    /** Details of a live handle, or null if the handle is unknown or expired. */
+    public StagedUpload describe(String handle) {
+        Staged entry = live(handle);
+        return entry != null ? entry.describe() : null;
+    }
+
+    /**
+     * The parsed records of a live handle, from the cache or parsed again from the staged file; null if the
+     * handle is unknown or expired. Using a handle extends its lifetime.
+     */
+    public ExcelRecordBatch records(String handle) throws IOException {
+        Staged entry = live(handle);
+        if (entry == null) {
+            return null;
+        }
+        entry.touch(ttl);
+        ExcelRecordBatch batch = cached(handle);
+        if (batch != null) {
+            return batch;
+        }
+        // one re-parse per handle at a time; other handles are not blocked
+        synchronized (entry) {
+            batch = cached(handle);
+            if (batch == null) {
+                batch = parse(entry.path);
+                cache(handle, batch);
+            }
+            return batch;
+        }
+    }
+
+    /** Drops a handle and its staged file; returns false if it was not known. */
+    public boolean discard(String handle) {
+        Staged entry = staged.remove(handle);
+        if (entry == null) {
+            return false;
+        }
+        uncache(handle);
+        delete(entry.path);
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${filecreator.staging.sweep-interval:60000}")
+    public void sweepExpired() {
+        long now = System.currentTimeMillis();
+        for (Staged entry : staged.values()) {
+            if (entry.expiresAt < now) {
+                log.debug("Staged upload {} expired", entry.handle);
+                discard(entry.handle);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void discardAll() {
+        for (String handle : staged.keySet()) {
+            discard(handle);
+        }
+    }
+
+    private Staged live(String handle) {
+        Staged entry = handle != null ? staged.get(handle) : null;
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            discard(handle);
+            return null;
+        }
+        return entry;
+    }
+
+    private ExcelRecordBatch parse(Path path) throws IOException {
+        ExcelRecordBatch batch = new ExcelRecordBatch();
+        parserService.parse(path.toFile(), batch::add);
+        batch.trimToSize();
+        return batch;
+    }
+
+    private ExcelRecordBatch cached(String handle) {
+        synchronized (cache) {
+            return cache.get(handle);
+        }
+    }
+
+    /** Adds a batch and evicts least recently used batches until both bounds hold again. */
+    private void cache(String handle, ExcelRecordBatch batch) {
+        synchronized (cache) {
+            ExcelRecordBatch previous = cache.put(handle, batch);
+            if (previous != null) {
+                cachedBytes -= previous.estimatedBytes();
+            }
+            cachedBytes += batch.estimatedBytes();
+            Iterator<Map.Entry<String, ExcelRecordBatch>> eldest = cache.entrySet().iterator();
+            while (eldest.hasNext() && (cache.size() > maxCachedEntries || cachedBytes > maxCachedSize.toBytes())) {
+                Map.Entry<String, ExcelRecordBatch> evicted = eldest.next();
+                cachedBytes -= evicted.getValue().estimatedBytes();
+                eldest.remove();
+                log.debug("Evicted parsed records of staged upload {}", evicted.getKey());
+            }
+        }
+    }
+
+    private void uncache(String handle) {
+        synchronized (cache) {
+            ExcelRecordBatch removed = cache.remove(handle);
+            if (removed != null) {
+                cachedBytes -= removed.estimatedBytes();
+            }
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete staged upload {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static final class Staged {
+        private final String handle;
+        private final Path path;
+        private final String fileName;
+        private final long size;
+        private final int recordCount;
+        private volatile long expiresAt;
+
+        private Staged(String handle, Path path, String fileName, long size, int recordCount) {
+            this.handle = handle;
+            this.path = path;
+            this.fileName = fileName;
+            this.size = size;
+            this.recordCount = recordCount;
+        }
+
+        void touch(Duration ttl) {
+            expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        }
+
+        StagedUpload describe() {
+            StagedUpload upload = new StagedUpload();
+            upload.setHandle(handle);
+            upload.setFileName(fileName);
+            upload.setSize(size);
+            upload.setRecordCount(recordCount);
+            upload.setExpiresAt(Instant.ofEpochMilli(expiresAt));
+            return upload;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.filecreator.service;
+
+import com.example.filecreator.model.ExcelRecord;
+import com.example.filecreator.model.ExcelRecordView;
+import com.example.filecreator.model.ExcelRecordView.Amount;
+import com.example.filecreator.model.ImportSummary;
+import com.example.filecreator.model.ImporterSummary;
+import com.example.filecreator.model.MoneySum;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Numbers-only aggregation of an upload for {@code /api/summary}: record count and the four amount totals,
+ * per-importer totals, and distinct HS codes and BE numbers as {@link HyperLogLog} estimates. Nothing per
+ * record is kept, so memory depends on the number of importers, not rows; the sketches are a fixed 16 KB
+ * each. Records without an importer name count towards the totals but not towards any importer.
+ *
+ * <p>{@link #result} ranks importers with a bounded heap of the requested size instead of sorting them all.
+ * Aggregations of consecutive parts of the input can be {@link #merge merged}. Not thread-safe.
+ */
+public final class SummaryAggregation implements RecordSink {
+
+    private static final Amount[] AMOUNTS = Amount.values();
+
+    // null to keep every record
+    private final BeDateRange range;
+    private long records;
+    private final MoneySum[] totals = newSums();
+    private final Map<String, ImporterTotals> importers = new HashMap<>();
+    private final HyperLogLog hsCodes = new HyperLogLog();
+    private final HyperLogLog beNumbers = new HyperLogLog();
+
+    SummaryAggregation(BeDateRange range) {
+        this.range = range;
+    }
+
+    /**
+     * The amount named by a {@code rankBy} request parameter: {@code differential-duty},
+     * {@code assessable-value}, {@code duty-paid} or {@code duty-payable}.
+     *
+     * @throws IllegalArgumentException for any other name
+     */
+    public static Amount rankingAmount(String name) {
+        for (Amount amount : AMOUNTS) {
+            if (rankingName(amount).equals(name.trim().toLowerCase(Locale.ROOT))) {
+                return amount;
+            }
+        }
+        List<String> names = new ArrayList<>();
+        for (Amount amount : AMOUNTS) {
+            names.add(rankingName(amount));
+        }
+        throw new IllegalArgumentException("Unknown rankBy '" + name.trim() + "'; expected one of " + names);
+    }
+
+    @Override
+    public void accept(ExcelRecord record) {
+        add(record);
+    }
+
+    public void add(ExcelRecordView record) {
+        if (range != null && !range.contains(record)) {
+            return;
+        }
+        records++;
+        for (Amount amount : AMOUNTS) {
+            record.addAmount(amount, totals[amount.ordinal()]);
+        }
+        String importerName = record.getImporterName();
+        if (importerName != null && !importerName.trim().isEmpty()) {
+            ImporterTotals importer = importers.get(importerName);
+            if (importer == null) {
+                importer = new ImporterTotals(importerName, importers.size());
+                importers.put(importerName, importer);
+            }
+            importer.add(record);
+        }
+        hsCodes.add(record.getEightDigitHsCode());
+        beNumbers.add(record.getBeNumber());
+    }
+
+    /** Folds in the aggregation of the records that came after this one's and returns this aggregation. */
+    public SummaryAggregation merge(SummaryAggregation later) {
+        records += later.records;
+        for (Amount amount : AMOUNTS) {
+            totals[amount.ordinal()].add(later.totals[amount.ordinal()]);
+        }
+        // later's importers in their order of first appearance, so new ones are numbered after ours
+        List<ImporterTotals> laterImporters = new ArrayList<>(later.importers.values());
+        laterImporters.sort(Comparator.comparingInt(importer -> importer.firstSeen));
+        for (ImporterTotals importer : laterImporters) {
+            ImporterTotals ours = importers.get(importer.name);
+            if (ours == null) {
+                importers.put(importer.name, new ImporterTotals(importer.name, importers.size()).merge(importer));
+            } else {
+                ours.merge(importer);
+            }
+        }
+        hsCodes.merge(later.hsCodes);
+        beNumbers.merge(later.beNumbers);
+        return this;
+    }
+
+    /** The summary with the {@code top} importers by {@code rankBy}, highest first. */
+    public ImportSummary result(int top, Amount rankBy) {
+        ImportSummary summary = new ImportSummary();
+        summary.setRecords(records);
+        summary.setImporters(importers.size());
+        summary.setDistinctHsCodes(hsCodes.estimate());
+        summary.setDistinctBeNumbers(beNumbers.estimate());
+        summary.setTotalDifferentialDuty(totals[Amount.DIFFERENTIAL_DUTY.ordinal()].toBigDecimal());
+        summary.setTotalAssessableValue(totals[Amount.ASSESSABLE_VALUE.ordinal()].toBigDecimal());
+        summary.setTotalDutyPaid(totals[Amount.TOTAL_DUTY_PAID.ordinal()].toBigDecimal());
+        summary.setTotalDutyPayable(totals[Amount.DUTY_PAYABLE.ordinal()].toBigDecimal());
+        summary.setRankedBy(rankingName(rankBy));
+        summary.setTopImporters(topImporters(top, rankBy));
+        return summary;
+    }
+
+    // min-heap of the best so far: the weakest of them is evicted whenever a better importer comes along
+    private List<ImporterSummary> topImporters(int top, Amount rankBy) {
+        // higher amount ranks first, then earlier first appearance
+        Comparator<Ranked> better = Comparator.<Ranked, BigDecimal>comparing(ranked -> ranked.amount)
+                .thenComparing(ranked -> ranked.importer.firstSeen, Comparator.reverseOrder());
+        PriorityQueue<Ranked> heap = new PriorityQueue<>(better);
+        if (top > 0) {
+            for (ImporterTotals importer : importers.values()) {
+                Ranked candidate = new Ranked(importer, importer.totals[rankBy.ordinal()].toBigDecimal());
+                if (heap.size() < top) {
+                    heap.add(candidate);
+                } else if (better.compare(candidate, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(candidate);
+                }
+            }
+        }
+        List<ImporterSummary> ranked = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            ranked.add(heap.poll().importer.toSummary());
+        }
+        Collections.reverse(ranked);
+        return ranked;
+    }
+
+    private static String rankingName(Amount amount) {
+        switch (amount) {
+            case TOTAL_DUTY_PAID:
+                return "duty-paid";
+            default:
+                return amount.name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    private static MoneySum[] newSums() {
+        MoneySum[] sums = new MoneySum[AMOUNTS.length];
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = new MoneySum();
+        }
+        return sums;
+    }
+
+    private static final class Ranked {
+        private final ImporterTotals importer;
+        private final BigDecimal amount;
+
+        Ranked(ImporterTotals importer, BigDecimal amount) {
+            this.importer = importer;
+            this.amount = amount;
+        }
+    }
+
+    private static final class ImporterTotals {
+        private final String name;
+        // position among the importers in order of first appearance, for breaking ties
+        private final int firstSeen;
+        private long records;
+        private final MoneySum[] totals = newSums();
+
+        ImporterTotals(String name, int firstSeen) {
+            this.name = name;
+            this.firstSeen = firstSeen;
+        }
+
+        void add(ExcelRecordView record) {
+            records++;
+            for (Amount amount : AMOUNTS) {
+                record.addAmount(amount, totals[amount.ordinal()]);
+            }
+        }
+
+        ImporterTotals merge(ImporterTotals later) {
+            records += later.records;
+            for (Amount amount : AMOUNTS) {
+                totals[amount.ordinal()].add(later.totals[amount.ordinal()]);
+            }
+            return this;
+        }
+
+        ImporterSummary toSummary() {
+            ImporterSummary summary = new ImporterSummary();
+            summary.setImporterName(name);
+            summary.setRecords(records);
+            summary.setTotalDifferentialDuty(totals[Amount.DIFFERENTIAL_DUTY.ordinal()].toBigDecimal());
+            summary.setTotalAssessableValue(totals[Amount.ASSESSABLE_VALUE.ordinal()].toBigDecimal());
+            summary.setTotalDutyPaid(totals[Amount.TOTAL_DUTY_PAID.ordinal()].toBigDecimal());
+            summary.setTotalDutyPayable(totals[Amount.DUTY_PAYABLE.ordinal()].toBigDecimal());
+            return summary;
+        }
+    }
+}
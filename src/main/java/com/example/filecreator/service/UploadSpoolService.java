@@ -0,0 +1,81 @@
+package com.example.filecreator.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Gives uploads a place on disk so they can go through the file-based parsers. The servlet container
+ * already streams multipart parts into the spool directory as they arrive
+ * ({@code spring.servlet.multipart.location}, threshold 0), so {@link #spool(MultipartFile)} normally just
+ * moves that part file under a name that keeps the upload's extension; nothing is buffered on the heap.
+ *
+ * <p>Spooled files are deleted when the current request completes. Outside a request the caller owns the
+ * file and must delete it.
+ */
+@Service
+public class UploadSpoolService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadSpoolService.class);
+
+    /** Directory for spooled uploads; shared with the servlet container's multipart location. */
+    @Value("${filecreator.upload.spool-dir:${java.io.tmpdir}/filecreator-uploads}")
+    private String spoolDir = Paths.get(System.getProperty("java.io.tmpdir"), "filecreator-uploads").toString();
+
+    @PostConstruct
+    public void createSpoolDir() throws IOException {
+        Files.createDirectories(Paths.get(spoolDir));
+    }
+
+    /**
+     * Moves (or, for in-memory parts, writes) the upload to a temp file in the spool directory whose name
+     * ends with the upload's extension, and schedules its deletion at the end of the request.
+     */
+    public Path spool(MultipartFile file) throws IOException {
+        Path dir = Paths.get(spoolDir);
+        Files.createDirectories(dir);
+        Path spooled = Files.createTempFile(dir, "upload-", extension(file.getOriginalFilename()));
+        try {
+            // transferTo(File) lets the container rename its own part file instead of copying it
+            file.transferTo(spooled.toFile());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spooled);
+            throw e;
+        }
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            request.registerDestructionCallback("spooled-upload:" + spooled, () -> delete(spooled),
+                    RequestAttributes.SCOPE_REQUEST);
+        }
+        return spooled;
+    }
+
+    private static void delete(Path spooled) {
+        try {
+            Files.deleteIfExists(spooled);
+        } catch (IOException e) {
+            log.warn("Could not delete spooled upload {}: {}", spooled, e.getMessage());
+        }
+    }
+
+    static String extension(String filename) {
+        if (filename == null) {
+            return ".csv";
+        }
+        String lower = filename.toLowerCase();
+        if (lower.endsWith(".xlsx")) return ".xlsx";
+        if (lower.endsWith(".xls")) return ".xls";
+        // anything else is parsed as CSV, exactly like ExcelParserService.parse(MultipartFile)
+        return ".csv";
+    }
+}
@@ -2,222 +2,430 @@ package com.example.filecreator.service;
 
 import com.example.filecreator.model.AggregatedExcelRecord;
 import com.example.filecreator.model.ExcelRecord;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFRun;
-import org.apache.poi.xwpf.usermodel.XWPFTable;
-import org.apache.poi.xwpf.usermodel.XWPFTableCell;
-import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import com.example.filecreator.model.ExcelRecordView;
+import com.example.filecreator.model.ManifestEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 @Service
 public class WordDocumentService {
 
+    private static final Logger log = LoggerFactory.getLogger(WordDocumentService.class);
+
     private static final String TEMPLATE_FILE = "Rough.docx";
-    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{\\{([^}]+)\\}\\}");
+
+    /**
+     * How documents are rendered from the compiled template: {@code segments} streams the pre-cut document
+     * XML with the values in between, {@code xml} fills a copy of the XML objects (see {@link CompiledTemplate}).
+     */
+    @Value("${filecreator.template.engine:segments}")
+    private String templateEngine = "segments";
+
+    /** Number of worker threads rendering the documents of an archive; 0 means one per available processor. */
+    @Value("${filecreator.render.parallelism:0}")
+    private int parallelism;
+
+    /**
+     * Documents of one archive that may be rendered or waiting to be written at a time, e.g. while an
+     * earlier, slower one is still being rendered; 0 means two per worker.
+     */
+    @Value("${filecreator.render.window:0}")
+    private int window;
+
+    private volatile CompiledTemplate template;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void checkTemplateEngine() {
+        if (!"segments".equals(templateEngine) && !"xml".equals(templateEngine)) {
+            throw new IllegalArgumentException("Unknown filecreator.template.engine '" + templateEngine
+                    + "'; expected segments or xml");
+        }
+    }
 
     public byte[] generateWordDocuments(List<ExcelRecord> records) throws IOException {
         // Create a ZIP file containing all generated Word documents
         ByteArrayOutputStream zipOutputStream = new ByteArrayOutputStream();
-        try (ZipOutputStream zip = new ZipOutputStream(zipOutputStream)) {
-            
-            for (int i = 0; i < records.size(); i++) {
-                ExcelRecord record = records.get(i);
-                byte[] docBytes = generateSingleDocument(record);
-                
-                // Add document to ZIP
-                String filename = String.format("Document_%d_%s.docx", 
-                    (i + 1), 
-                    sanitizeFilename(record.getImporterName()));
-                    
-                ZipEntry entry = new ZipEntry(filename);
-                zip.putNextEntry(entry);
-                zip.write(docBytes);
-                zip.closeEntry();
+        try (DocumentArchive archive = openDocumentArchive(zipOutputStream)) {
+            for (ExcelRecord record : records) {
+                archive.accept(record);
             }
         }
         
         return zipOutputStream.toByteArray();
     }
 
-    public byte[] generateAggregatedWordDocuments(List<AggregatedExcelRecord> aggregatedRecords) throws IOException {
-        // Create a ZIP file containing all generated Word documents for aggregated records
-        ByteArrayOutputStream zipOutputStream = new ByteArrayOutputStream();
-        try (ZipOutputStream zip = new ZipOutputStream(zipOutputStream)) {
-            
-            for (int i = 0; i < aggregatedRecords.size(); i++) {
-                AggregatedExcelRecord record = aggregatedRecords.get(i);
-                byte[] docBytes = generateSingleAggregatedDocument(record);
+    /**
+     * Opens a ZIP of generated documents on {@code out}. Every record passed to the returned sink becomes the
+     * next {@code Document_<n>_<importer>.docx} entry, so it can be fed straight from
+     * {@link ExcelParserService#parse(org.springframework.web.multipart.MultipartFile, RecordSink)}. Records
+     * are rendered on the worker pool while the next ones are read and written to the ZIP in the order they
+     * came, at most {@code filecreator.render.window} documents behind. Closing the archive writes the rest,
+     * finishes the ZIP and closes {@code out}.
+     */
+    public DocumentArchive openDocumentArchive(OutputStream out) {
+        return openDocumentArchive(out, ReusableDocuments.NONE);
+    }
+
+    /**
+     * Like {@link #openDocumentArchive(OutputStream)}, but a record whose fingerprint is found in
+     * {@code reusable} is written from those bytes instead of being rendered.
+     */
+    public DocumentArchive openDocumentArchive(OutputStream out, ReusableDocuments reusable) {
+        return new DocumentArchive(new ZipOutputStream(out), reusable);
+    }
+
+    /** Sink that appends one generated Word document per record to a ZIP stream. */
+    public final class DocumentArchive implements RecordSink, Closeable {
+        private final OrderedEntries zip;
+        private final ReusableDocuments reusable;
+        private final List<ManifestEntry> entries = new ArrayList<>();
+        private CompiledTemplate template;
+        private int count;
+
+        private DocumentArchive(ZipOutputStream zip, ReusableDocuments reusable) {
+            this.zip = new OrderedEntries(zip);
+            this.reusable = reusable;
+        }
+
+        @Override
+        public void accept(ExcelRecord record) throws IOException {
+            add(record);
+        }
+
+        /**
+         * Adds the document for one row, e.g. a row view of an {@code ExcelRecordBatch}. It is rendered on
+         * the worker pool, so the row must not change until the archive is closed.
+         */
+        public void add(ExcelRecordView record) throws IOException {
+            String fingerprint = DocumentFingerprint.of(record);
+            byte[] docBytes = reusable.find(fingerprint);
+            boolean reused = docBytes != null;
+            count++;
+
+            // Add document to ZIP
+            String filename = String.format("Document_%d_%s.docx", 
+                count, 
+                sanitizeFilename(record.getImporterName()));
                 
-                // Add document to ZIP
-                String filename = String.format("Aggregated_%d_%s.docx", 
-                    (i + 1), 
-                    sanitizeFilename(record.getImporterName()));
-                    
-                ZipEntry entry = new ZipEntry(filename);
-                zip.putNextEntry(entry);
-                zip.write(docBytes);
-                zip.closeEntry();
+            if (reused) {
+                zip.add(filename, docBytes);
+            } else {
+                if (template == null) {
+                    template = template();
+                }
+                CompiledTemplate rendered = template;
+                zip.render(filename, () -> generateSingleDocument(rendered, record));
             }
+            entries.add(new ManifestEntry(filename, fingerprint, reused));
+        }
+
+        /** Number of documents added so far. */
+        public int count() {
+            return count;
         }
+
+        /** Name and fingerprint of every document added so far, in ZIP order. */
+        public List<ManifestEntry> entries() {
+            return entries;
+        }
+
+        /** Writes the documents still being rendered and finishes the ZIP. */
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+
+    public byte[] generateAggregatedWordDocuments(List<AggregatedExcelRecord> aggregatedRecords) throws IOException {
+        // Create a ZIP file containing all generated Word documents for aggregated records
+        ByteArrayOutputStream zipOutputStream = new ByteArrayOutputStream();
+        writeAggregatedWordDocuments(aggregatedRecords, zipOutputStream, ReusableDocuments.NONE);
         
         return zipOutputStream.toByteArray();
     }
 
-    private byte[] generateSingleDocument(ExcelRecord record) throws IOException {
-        // Read template document
-        File templateFile = new File(TEMPLATE_FILE);
-        if (!templateFile.exists()) {
-            throw new FileNotFoundException("Template file not found: " + TEMPLATE_FILE);
+    /**
+     * Writes the ZIP of aggregated documents to {@code out} (and closes it), taking documents whose
+     * fingerprint is found in {@code reusable} from there instead of rendering them. Returns the name and
+     * fingerprint of every entry, in ZIP order.
+     */
+    public List<ManifestEntry> writeAggregatedWordDocuments(List<AggregatedExcelRecord> aggregatedRecords,
+                                                            OutputStream out, ReusableDocuments reusable) throws IOException {
+        try (AggregatedArchive archive = openAggregatedArchive(out, reusable)) {
+            for (AggregatedExcelRecord record : aggregatedRecords) {
+                archive.add(record);
+            }
+            return archive.entries();
         }
+    }
 
-        try (FileInputStream fis = new FileInputStream(templateFile);
-             XWPFDocument document = new XWPFDocument(fis)) {
-            
-            // Replace placeholders in paragraphs
-            replacePlaceholdersInParagraphs(document.getParagraphs(), record);
+    /**
+     * Opens a ZIP of aggregated documents on {@code out} that groups are added to one at a time, e.g. as a
+     * {@link SpillingAggregation} hands them out; the ZIP is the one {@link #writeAggregatedWordDocuments}
+     * writes for the same groups.
+     */
+    public AggregatedArchive openAggregatedArchive(OutputStream out, ReusableDocuments reusable) {
+        return new AggregatedArchive(new ZipOutputStream(out), reusable);
+    }
+
+    /** Appends one generated Word document per aggregated group to a ZIP stream. */
+    public final class AggregatedArchive implements Closeable {
+        private final OrderedEntries zip;
+        private final ReusableDocuments reusable;
+        private final List<ManifestEntry> entries = new ArrayList<>();
+        // groups of a grouping get their own folder and numbering
+        private final Map<String, Integer> groupCounts = new HashMap<>();
+        private CompiledTemplate template;
+
+        private AggregatedArchive(ZipOutputStream zip, ReusableDocuments reusable) {
+            this.zip = new OrderedEntries(zip);
+            this.reusable = reusable;
+        }
+
+        /** Adds the document for one group; it is rendered on the worker pool, like a {@link DocumentArchive}'s. */
+        public void add(AggregatedExcelRecord record) throws IOException {
+            String fingerprint = DocumentFingerprint.of(record);
+            byte[] docBytes = reusable.find(fingerprint);
+            boolean reused = docBytes != null;
             
-            // Replace placeholders in tables
-            for (XWPFTable table : document.getTables()) {
-                for (XWPFTableRow row : table.getRows()) {
-                    for (XWPFTableCell cell : row.getTableCells()) {
-                        replacePlaceholdersInParagraphs(cell.getParagraphs(), record);
-                    }
+            // Add document to ZIP
+            String filename;
+            if (record.getGrouping() == null) {
+                filename = String.format("Aggregated_%d_%s.docx", 
+                    (entries.size() + 1), 
+                    sanitizeFilename(record.getImporterName()));
+            } else {
+                filename = String.format("%s/Aggregated_%d_%s.docx",
+                    sanitizeFilename(record.getGrouping()),
+                    groupCounts.merge(record.getGrouping(), 1, Integer::sum),
+                    sanitizeFilename(record.getGroupKey()));
+            }
+                
+            if (reused) {
+                zip.add(filename, docBytes);
+            } else {
+                if (template == null) {
+                    template = template();
                 }
+                CompiledTemplate rendered = template;
+                zip.render(filename, () -> generateSingleAggregatedDocument(rendered, record));
             }
-            
-            // Write to byte array
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            document.write(outputStream);
-            return outputStream.toByteArray();
+            entries.add(new ManifestEntry(filename, fingerprint, reused));
+        }
+
+        /** Name and fingerprint of every document added so far, in ZIP order. */
+        public List<ManifestEntry> entries() {
+            return entries;
+        }
+
+        /** Writes the documents still being rendered and finishes the ZIP. */
+        @Override
+        public void close() throws IOException {
+            zip.close();
         }
     }
 
-    private byte[] generateSingleAggregatedDocument(AggregatedExcelRecord record) throws IOException {
-        // Read template document
-        File templateFile = new File(TEMPLATE_FILE);
-        if (!templateFile.exists()) {
-            throw new FileNotFoundException("Template file not found: " + TEMPLATE_FILE);
+    /** Renders one document. */
+    private interface DocumentRenderer {
+        byte[] render() throws IOException;
+    }
+
+    /**
+     * The entries of an archive's ZIP, written strictly in the order they were added although they are
+     * rendered on the worker pool side by side. Adding another entry when the window is full first writes
+     * the oldest one, waiting for its rendering if needed, so at most a window of documents is in memory
+     * however far ahead the others are. With a single worker, documents are rendered on the caller's thread
+     * and written right away.
+     */
+    private final class OrderedEntries implements Closeable {
+        private final ZipOutputStream zip;
+        // null to render on the caller's thread
+        private final ForkJoinPool workers;
+        private final int capacity;
+        private final Deque<PendingEntry> pending = new ArrayDeque<>();
+        private boolean failed;
+
+        OrderedEntries(ZipOutputStream zip) {
+            this.zip = zip;
+            int workerCount = workerCount();
+            this.workers = workerCount > 1 ? pool() : null;
+            this.capacity = window > 0 ? window : workerCount * 2;
         }
 
-        try (FileInputStream fis = new FileInputStream(templateFile);
-             XWPFDocument document = new XWPFDocument(fis)) {
-            
-            // Replace placeholders in paragraphs with aggregated data
-            replacePlaceholdersInParagraphsAggregated(document.getParagraphs(), record);
-            
-            // Replace placeholders in tables with aggregated data
-            for (XWPFTable table : document.getTables()) {
-                for (XWPFTableRow row : table.getRows()) {
-                    for (XWPFTableCell cell : row.getTableCells()) {
-                        replacePlaceholdersInParagraphsAggregated(cell.getParagraphs(), record);
-                    }
-                }
+        /** Adds an entry whose bytes are at hand, e.g. a reused document. */
+        void add(String filename, byte[] docBytes) throws IOException {
+            if (pending.isEmpty()) {
+                writeEntry(zip, filename, docBytes);
+            } else {
+                enqueue(new PendingEntry(filename, docBytes, null));
             }
-            
-            // Write to byte array
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            document.write(outputStream);
-            return outputStream.toByteArray();
         }
-    }
 
-    private void replacePlaceholdersInParagraphs(List<XWPFParagraph> paragraphs, ExcelRecord record) {
-        for (XWPFParagraph paragraph : paragraphs) {
-            // Get the full text of the paragraph first
-            String fullText = paragraph.getText();
-            if (fullText == null || !fullText.contains("{{")) {
-                continue;
+        void render(String filename, DocumentRenderer document) throws IOException {
+            if (workers == null) {
+                writeEntry(zip, filename, document.render());
+                return;
             }
+            enqueue(new PendingEntry(filename, null, workers.submit(() -> {
+                try {
+                    return document.render();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })));
+        }
 
-            // Replace placeholders in the full text
-            String replacedText = replacePlaceholders(fullText, record);
-            
-            // If text was changed, we need to rebuild the paragraph
-            if (!fullText.equals(replacedText)) {
-                // Clear all existing runs
-                for (int i = paragraph.getRuns().size() - 1; i >= 0; i--) {
-                    paragraph.removeRun(i);
+        private void enqueue(PendingEntry entry) throws IOException {
+            while (pending.size() >= capacity) {
+                writeOldest();
+            }
+            pending.addLast(entry);
+        }
+
+        private void writeOldest() throws IOException {
+            boolean written = false;
+            try {
+                PendingEntry entry = pending.removeFirst();
+                writeEntry(zip, entry.filename, entry.rendering != null ? entry.rendering.get() : entry.docBytes);
+                written = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while rendering documents");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException("Failed to render document", cause);
+            } finally {
+                if (!written) {
+                    // the archive is broken, don't render the rest for nothing
+                    failed = true;
+                    cancelPending();
                 }
-                
-                // Add new run with replaced text
-                XWPFRun newRun = paragraph.createRun();
-                newRun.setText(replacedText);
             }
         }
-    }
 
-    private void replacePlaceholdersInParagraphsAggregated(List<XWPFParagraph> paragraphs, AggregatedExcelRecord record) {
-        for (XWPFParagraph paragraph : paragraphs) {
-            // Get the full text of the paragraph first
-            String fullText = paragraph.getText();
-            if (fullText == null || !fullText.contains("{{")) {
-                continue;
+        private void cancelPending() {
+            for (PendingEntry entry : pending) {
+                if (entry.rendering != null) entry.rendering.cancel(true);
             }
+            pending.clear();
+        }
 
-            // Replace placeholders in the full text with aggregated data
-            String replacedText = replacePlaceholdersAggregated(fullText, record);
-            
-            // If text was changed, we need to rebuild the paragraph
-            if (!fullText.equals(replacedText)) {
-                // Clear all existing runs
-                for (int i = paragraph.getRuns().size() - 1; i >= 0; i--) {
-                    paragraph.removeRun(i);
+        /** Writes the entries still pending, unless writing one of them has failed, and finishes the ZIP. */
+        @Override
+        public void close() throws IOException {
+            try {
+                while (!failed && !pending.isEmpty()) {
+                    writeOldest();
                 }
-                
-                // Add new run with replaced text
-                XWPFRun newRun = paragraph.createRun();
-                newRun.setText(replacedText);
+            } finally {
+                cancelPending();
+                zip.close();
             }
         }
     }
 
-    private String replacePlaceholders(String text, ExcelRecord record) {
-        Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
-        StringBuffer result = new StringBuffer();
-        
-        while (matcher.find()) {
-            String placeholder = matcher.group(1).trim();
-            System.out.println("Found placeholder: '" + placeholder + "'");
-            String replacement = getFieldValue(placeholder, record);
-            System.out.println("Replacement value: '" + replacement + "'");
-            
-            // Escape special regex characters in replacement
-            String safeReplacement = replacement.replaceAll("\\$", "\\\\\\$");
-            matcher.appendReplacement(result, safeReplacement);
+    private static final class PendingEntry {
+        final String filename;
+        // the document, or null while it is being rendered
+        final byte[] docBytes;
+        final ForkJoinTask<byte[]> rendering;
+
+        PendingEntry(String filename, byte[] docBytes, ForkJoinTask<byte[]> rendering) {
+            this.filename = filename;
+            this.docBytes = docBytes;
+            this.rendering = rendering;
         }
-        matcher.appendTail(result);
-        
-        return result.toString();
     }
 
-    private String replacePlaceholdersAggregated(String text, AggregatedExcelRecord record) {
-        Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
-        StringBuffer result = new StringBuffer();
-        
-        while (matcher.find()) {
-            String placeholder = matcher.group(1).trim();
-            System.out.println("Found placeholder (aggregated): '" + placeholder + "'");
-            String replacement = getAggregatedFieldValue(placeholder, record);
-            System.out.println("Replacement value (aggregated): '" + replacement + "'");
-            
-            // Escape special regex characters in replacement
-            String safeReplacement = replacement.replaceAll("\\$", "\\\\\\$");
-            matcher.appendReplacement(result, safeReplacement);
+    private int workerCount() {
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    private synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(workerCount());
         }
-        matcher.appendTail(result);
-        
-        return result.toString();
+        return pool;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    /** Fingerprint of the current template file; documents rendered from different templates never match. */
+    public String templateFingerprint() throws IOException {
+        return template().fingerprint();
+    }
+
+    /**
+     * The compiled template, compiled again whenever Rough.docx has been changed or replaced since. Archives
+     * take it once, so every document of a ZIP comes from the same template.
+     */
+    CompiledTemplate template() throws IOException {
+        Path templateFile = Paths.get(TEMPLATE_FILE);
+        if (!Files.exists(templateFile)) {
+            throw new FileNotFoundException("Template file not found: " + TEMPLATE_FILE);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(templateFile, BasicFileAttributes.class);
+        CompiledTemplate compiled = template;
+        if (compiled == null || !compiled.isCompiledFrom(attributes)) {
+            synchronized (this) {
+                compiled = template;
+                if (compiled == null || !compiled.isCompiledFrom(attributes)) {
+                    compiled = CompiledTemplate.compile(templateFile, attributes);
+                    template = compiled;
+                    log.info("Compiled template {} ({} paragraphs with placeholders)", TEMPLATE_FILE, compiled.slotCount());
+                }
+            }
+        }
+        return compiled;
+    }
+
+    private byte[] generateSingleDocument(CompiledTemplate template, ExcelRecordView record) throws IOException {
+        return render(template, placeholder -> getFieldValue(placeholder, record));
     }
 
-    private String getFieldValue(String placeholder, ExcelRecord record) {
+    private byte[] generateSingleAggregatedDocument(CompiledTemplate template, AggregatedExcelRecord record) throws IOException {
+        return render(template, placeholder -> getAggregatedFieldValue(placeholder, record));
+    }
+
+    private byte[] render(CompiledTemplate template, Function<String, String> values) throws IOException {
+        return "xml".equals(templateEngine) ? template.renderXml(values) : template.render(values);
+    }
+
+    private String getFieldValue(String placeholder, ExcelRecordView record) {
         // Map placeholder names to actual field values - handle exact matches from your template
         String normalizedPlaceholder = placeholder.toLowerCase().trim();
         
@@ -249,6 +457,10 @@ public class WordDocumentService {
             case "be date":
             case "bedate":
                 return record.getBeDate() != null ? record.getBeDate() : "";
+            case "iec code":
+            case "ieccode":
+            case "iec":
+                return record.getIecCode() != null ? record.getIecCode() : "";
             case "full item description":
             case "fullitemdescription":
             case "item description":
@@ -271,7 +483,7 @@ public class WordDocumentService {
                 
             default:
                 // Log unmatched placeholders for debugging
-                System.out.println("Unmatched placeholder: '" + placeholder + "' (normalized: '" + normalizedPlaceholder + "')");
+                log.debug("Unmatched placeholder: '{}' (normalized: '{}')", placeholder, normalizedPlaceholder);
                 return "{{" + placeholder + "}}"; // Keep original if not found
         }
     }
@@ -311,6 +523,16 @@ public class WordDocumentService {
             case "be date":
             case "bedate":
                 return record.getAggregatedBeDates() != null ? record.getAggregatedBeDates() : "";
+            case "iec code":
+            case "ieccode":
+            case "iec":
+                return record.getAggregatedIecCodes() != null ? record.getAggregatedIecCodes() : "";
+            case "group":
+            case "grouping":
+                return record.getGrouping() != null ? record.getGrouping() : "";
+            case "group key":
+            case "groupkey":
+                return record.getGroupKey() != null ? record.getGroupKey() : "";
             case "full item description":
             case "fullitemdescription":
             case "item description":
@@ -333,11 +555,25 @@ public class WordDocumentService {
                 
             default:
                 // Log unmatched placeholders for debugging
-                System.out.println("Unmatched aggregated placeholder: '" + placeholder + "' (normalized: '" + normalizedPlaceholder + "')");
+                log.debug("Unmatched aggregated placeholder: '{}' (normalized: '{}')", placeholder, normalizedPlaceholder);
                 return "{{" + placeholder + "}}"; // Keep original if not found
         }
     }
 
+    // a DOCX is compressed already: deflating it again costs about as much as rendering it and saves nothing
+    private static void writeEntry(ZipOutputStream zip, String filename, byte[] docBytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(docBytes);
+        ZipEntry entry = new ZipEntry(filename);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(docBytes.length);
+        entry.setCompressedSize(docBytes.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(docBytes);
+        zip.closeEntry();
+    }
+
     private String sanitizeFilename(String filename) {
         if (filename == null) {
             return "Unknown";
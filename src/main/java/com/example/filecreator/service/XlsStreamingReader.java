@@ -0,0 +1,211 @@
+package com.example.filecreator.service;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Streams the first sheet of a legacy .xls (BIFF8) workbook through POI's HSSF event API instead of
+ * building an {@code HSSFWorkbook}. Records are read straight from the POIFS stream; only the shared
+ * string table and the row being assembled are kept in memory. Cells are pushed to a
+ * {@link SheetRowHandler} with the same typing as {@link XlsxStreamingReader}, so both formats share one
+ * header binding and one cell decoder.
+ */
+final class XlsStreamingReader {
+
+    private XlsStreamingReader() {
+    }
+
+    static void read(File file, SheetRowHandler handler) throws IOException {
+        try (POIFSFileSystem fs = new POIFSFileSystem(file, true)) {
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(new FirstSheetListener(handler));
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs);
+        } catch (HSSFUserException e) {
+            if (e.getReason() instanceof IOException) {
+                throw (IOException) e.getReason();
+            }
+            throw new IOException("Failed to read XLS file: " + file.getName(), e);
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to read XLS file: " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Tracks the workbook globals (for the shared string table) and the first worksheet substream, and
+     * aborts the event loop as soon as that worksheet ends.
+     */
+    private static final class FirstSheetListener extends AbortableHSSFListener {
+        private static final short CONTINUE = 0;
+        private static final short DONE = 1;
+
+        private final SheetRowHandler handler;
+        private final Deque<Integer> declaredRows = new ArrayDeque<>();
+
+        private SSTRecord strings;
+        private boolean inFirstSheet;
+        private int currentRow = -1;
+        private int pendingFormulaRow = -1;
+        private int pendingFormulaColumn;
+
+        FirstSheetListener(SheetRowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record) throws HSSFUserException {
+            try {
+                return process(record);
+            } catch (IOException e) {
+                throw new HSSFUserException(e);
+            }
+        }
+
+        private short process(Record record) throws IOException {
+            if (record instanceof BOFRecord) {
+                if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                    inFirstSheet = true;
+                }
+                return CONTINUE;
+            }
+            if (record instanceof SSTRecord) {
+                strings = (SSTRecord) record;
+                return CONTINUE;
+            }
+            if (!inFirstSheet) {
+                return CONTINUE;
+            }
+
+            if (record instanceof StringRecord) {
+                // cached text result of the formula cell just before it
+                if (pendingFormulaRow >= 0) {
+                    cellAt(pendingFormulaRow);
+                    handler.cell(pendingFormulaColumn, ((StringRecord) record).getString());
+                    pendingFormulaRow = -1;
+                }
+                return CONTINUE;
+            }
+            flushPendingFormula();
+
+            if (record instanceof EOFRecord) {
+                finishSheet();
+                return DONE;
+            }
+            if (record instanceof RowRecord) {
+                declaredRows.addLast(((RowRecord) record).getRowNumber());
+                return CONTINUE;
+            }
+            if (record instanceof CellValueRecordInterface) {
+                onCell((CellValueRecordInterface) record);
+            }
+            return CONTINUE;
+        }
+
+        private void onCell(CellValueRecordInterface cell) throws IOException {
+            int row = cell.getRow();
+            int column = cell.getColumn();
+            if (cell instanceof NumberRecord) {
+                cellAt(row);
+                handler.numericCell(column, ((NumberRecord) cell).getValue(), false);
+            } else if (cell instanceof LabelSSTRecord) {
+                cellAt(row);
+                int index = ((LabelSSTRecord) cell).getSSTIndex();
+                handler.cell(column, strings != null ? strings.getString(index).getString() : "");
+            } else if (cell instanceof LabelRecord) {
+                cellAt(row);
+                handler.cell(column, ((LabelRecord) cell).getValue());
+            } else if (cell instanceof FormulaRecord) {
+                onFormula((FormulaRecord) cell, row, column);
+            } else if (cell instanceof BoolErrRecord) {
+                BoolErrRecord boolErr = (BoolErrRecord) cell;
+                cellAt(row);
+                handler.cell(column, boolErr.isBoolean() ? Boolean.toString(boolErr.getBooleanValue()) : "");
+            } else if (cell instanceof BlankRecord) {
+                cellAt(row);
+                handler.cell(column, "");
+            }
+        }
+
+        private void onFormula(FormulaRecord formula, int row, int column) throws IOException {
+            CellType cached = formula.getCachedResultTypeEnum();
+            if (cached == CellType.STRING) {
+                // the text follows in a StringRecord, or not at all for an empty string
+                pendingFormulaRow = row;
+                pendingFormulaColumn = column;
+                return;
+            }
+            cellAt(row);
+            if (cached == CellType.BOOLEAN) {
+                handler.cell(column, Boolean.toString(formula.getCachedBooleanValue()));
+            } else if (cached == CellType.ERROR) {
+                handler.cell(column, "");
+            } else {
+                handler.numericCell(column, formula.getValue(), true);
+            }
+        }
+
+        private void flushPendingFormula() throws IOException {
+            if (pendingFormulaRow >= 0) {
+                cellAt(pendingFormulaRow);
+                handler.cell(pendingFormulaColumn, "");
+                pendingFormulaRow = -1;
+            }
+        }
+
+        /**
+         * Makes {@code row} the open row. Rows declared by a ROW record but without cells of their own are
+         * reported as empty rows in between, as {@code Sheet.iterator()} would.
+         */
+        private void cellAt(int row) throws IOException {
+            if (row == currentRow) {
+                return;
+            }
+            if (currentRow >= 0) {
+                handler.endRow();
+            }
+            while (!declaredRows.isEmpty() && declaredRows.peekFirst() <= row) {
+                int declared = declaredRows.pollFirst();
+                if (declared < row && declared > currentRow) {
+                    handler.startRow(declared);
+                    handler.endRow();
+                }
+            }
+            currentRow = row;
+            handler.startRow(row);
+        }
+
+        private void finishSheet() throws IOException {
+            if (currentRow >= 0) {
+                handler.endRow();
+            }
+            while (!declaredRows.isEmpty()) {
+                int declared = declaredRows.pollFirst();
+                if (declared > currentRow) {
+                    handler.startRow(declared);
+                    handler.endRow();
+                }
+            }
+        }
+    }
+}
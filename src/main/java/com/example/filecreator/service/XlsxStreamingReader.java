@@ -0,0 +1,206 @@
+package com.example.filecreator.service;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Streams the first sheet of an .xlsx file through POI's event model instead of building an
+ * {@code XSSFWorkbook}. Only the shared strings table is held in memory; sheet rows are pushed to a
+ * {@link SheetRowHandler} one at a time as the SAX parser reaches them.
+ */
+final class XlsxStreamingReader {
+
+    private XlsxStreamingReader() {
+    }
+
+    static void read(File file, SheetRowHandler handler) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (OpenXML4JException | RuntimeException e) {
+            throw new IOException("Not a readable XLSX file: " + file.getName(), e);
+        }
+        try {
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg, false);
+            XSSFReader reader = new XSSFReader(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new SheetHandler(strings, handler));
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (SAXException e) {
+            if (e.getException() instanceof IOException) {
+                throw (IOException) e.getException();
+            }
+            throw new IOException("Failed to read XLSX sheet: " + e.getMessage(), e);
+        } catch (OpenXML4JException | ParserConfigurationException e) {
+            throw new IOException("Failed to read XLSX sheet: " + e.getMessage(), e);
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    /**
+     * Converts the column letters of a cell reference such as {@code "AB12"} into a zero-based column
+     * index. Returns -1 if the reference carries no column letters.
+     */
+    static int columnIndex(String cellRef) {
+        int column = 0;
+        int i = 0;
+        for (; i < cellRef.length(); i++) {
+            char ch = cellRef.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') {
+                column = column * 26 + (ch - 'A' + 1);
+            } else if (ch >= 'a' && ch <= 'z') {
+                column = column * 26 + (ch - 'a' + 1);
+            } else {
+                break;
+            }
+        }
+        return i == 0 ? -1 : column - 1;
+    }
+
+    private static final class SheetHandler extends DefaultHandler {
+        private final ReadOnlySharedStringsTable strings;
+        private final SheetRowHandler handler;
+        private final StringBuilder text = new StringBuilder();
+
+        private boolean inRow;
+        private int nextRowNum;
+        private int column;
+        private String cellType;
+        private boolean hasFormula;
+        private boolean hasValue;
+        private boolean collecting;
+        private boolean inInlineString;
+
+        SheetHandler(ReadOnlySharedStringsTable strings, SheetRowHandler handler) {
+            this.strings = strings;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    int rowNum = r != null ? Integer.parseInt(r) - 1 : nextRowNum;
+                    nextRowNum = rowNum + 1;
+                    inRow = true;
+                    column = -1;
+                    handler.startRow(rowNum);
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    int parsed = ref != null ? columnIndex(ref) : -1;
+                    column = parsed >= 0 ? parsed : column + 1;
+                    cellType = attributes.getValue("t");
+                    hasFormula = false;
+                    hasValue = false;
+                    text.setLength(0);
+                    break;
+                case "f":
+                    hasFormula = true;
+                    break;
+                case "v":
+                    hasValue = true;
+                    collecting = true;
+                    break;
+                case "is":
+                    hasValue = true;
+                    inInlineString = true;
+                    break;
+                case "t":
+                    collecting = inInlineString;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                case "t":
+                    collecting = false;
+                    break;
+                case "is":
+                    inInlineString = false;
+                    break;
+                case "c":
+                    reportCell();
+                    break;
+                case "row":
+                    if (inRow) {
+                        inRow = false;
+                        try {
+                            handler.endRow();
+                        } catch (IOException e) {
+                            throw new SAXException(e);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting) {
+                text.append(ch, start, length);
+            }
+        }
+
+        private void reportCell() {
+            boolean numeric = cellType == null || "n".equals(cellType);
+            if (numeric && hasFormula && !hasValue) {
+                // a formula without a cached result reads as 0, like Cell.getNumericCellValue()
+                handler.numericCell(column, 0d, true);
+            } else if (numeric && hasValue && text.length() > 0) {
+                handler.numericCell(column, Double.parseDouble(text.toString()), hasFormula);
+            } else {
+                handler.cell(column, hasValue ? textValue() : "");
+            }
+        }
+
+        private String textValue() {
+            String raw = text.toString();
+            if (cellType == null) {
+                return raw;
+            }
+            switch (cellType) {
+                case "s":
+                    return strings.getItemAt(Integer.parseInt(raw.trim())).getString();
+                case "b":
+                    return Boolean.toString("1".equals(raw) || "true".equalsIgnoreCase(raw));
+                case "e":
+                    return "";
+                case "inlineStr":
+                case "str":
+                default:
+                    return raw;
+            }
+        }
+    }
+}